@@ -0,0 +1,426 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* writes the vm code of every class of a program as a single Hack assembly file, so it doesn't need a vm translator.
+** The value on top of the stack is kept in D rather than in memory, as the number of values on the stack is known at
+** every instruction. A push followed by a pop or by add, sub, and or or, and a comparison followed by if-goto, are
+** written together. Calls, returns and the comparisons gt and lt jump to a single copy of the code that does them, and
+** a function returns its value in D rather than on the stack
+*/
+public class AsmWriter {
+    private File file;
+    private List<VMFile> classes = new ArrayList<VMFile>();
+    private StringBuilder asm;
+    // number of labels made up so far, to keep them unique
+    private int labelCount;
+    // class and function being written
+    private String className, functionName;
+
+    public AsmWriter(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // adds the code of a class to the program
+    public synchronized void add(VMFile vmFile) {
+        classes.add(vmFile);
+    }
+
+    /* writes the program to the assembly file, starting from Sys.init, or Main.main if there is no Sys.init. Prints a
+    ** message and throws CompileError if the program calls a function it doesn't have
+    */
+    public void write(PrintStream out) {
+        Set<String> functions = new HashSet<String>();
+        for (VMFile vmFile : classes) {
+            for (VMCode code : vmFile.getFunctions()) {
+                functions.add(vmFile.name(code.getName()));
+            }
+        }
+        Set<String> missing = new HashSet<String>();
+        for (VMFile vmFile : classes) {
+            for (VMCode code : vmFile.getFunctions()) {
+                for (int i = 0; i < code.size(); i++) {
+                    if (code.op(i) == VMCode.Opcode.CALL && !functions.contains(vmFile.name(code.arg(i)))
+                            && missing.add(vmFile.name(code.arg(i)))) {
+                        out.println("error: " + vmFile.name(code.arg(i)) + " is called but no class defines it");
+                    }
+                }
+            }
+        }
+        String entry = functions.contains("Sys.init") ? "Sys.init" : "Main.main";
+        if (!functions.contains(entry)) {
+            out.println("error: the program needs a Sys.init or Main.main function to start from");
+            throw new CompileError();
+        }
+        if (!missing.isEmpty()) {
+            throw new CompileError();
+        }
+
+        asm = new StringBuilder();
+        labelCount = 0;
+        writeBootstrap(entry);
+        try {
+            for (VMFile vmFile : classes) {
+                className = vmFile.getFile().getName().replaceAll("\\.vm$", "");
+                for (VMCode code : vmFile.getFunctions()) {
+                    writeFunction(vmFile, code);
+                }
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // code which has no translation, such as a variable of another class pushed from the field segment
+            out.println("error: " + e.getMessage() + " in " + functionName);
+            throw new CompileError();
+        }
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            pw.print(asm);
+        } catch (IOException e) {
+            out.println("error: error writing to file");
+        }
+    }
+
+    // sets up the stack, calls the entry function and then loops forever
+    private void writeBootstrap(String entry) {
+        line("@256", "D=A", "@SP", "M=D");
+        line("@$HALT", "D=A", "@R14", "M=D", "@" + entry, "D=A", "@R13", "M=D", "D=0", "@$CALL", "0;JMP");
+        line("($HALT)", "@$HALT", "0;JMP");
+
+        /* call: D is the number of arguments, R13 the function and R14 the return address. Pushes the caller's frame,
+        ** then sets ARG to the first argument and LCL to the top of the stack
+        */
+        line("($CALL)", "@R15", "M=D", "@R14", "D=M");
+        pushD();
+        for (String pointer : new String[] {"LCL", "ARG", "THIS", "THAT"}) {
+            line("@" + pointer, "D=M");
+            pushD();
+        }
+        line("@R15", "D=M", "@5", "D=D+A", "@SP", "D=M-D", "@ARG", "M=D", "@SP", "D=M", "@LCL", "M=D");
+        line("@R13", "A=M", "0;JMP");
+
+        /* return: D is the value returned. Pops the arguments, restores the caller's frame and jumps back with the
+        ** value still in D
+        */
+        line("($RETURN)", "@R13", "M=D", "@LCL", "D=M", "@R14", "M=D", "@5", "A=D-A", "D=M", "@R15", "M=D");
+        line("@ARG", "D=M", "@SP", "M=D");
+        for (String pointer : new String[] {"THAT", "THIS", "ARG", "LCL"}) {
+            line("@R14", "AM=M-1", "D=M", "@" + pointer, "M=D");
+        }
+        line("@R13", "D=M", "@R15", "A=M", "0;JMP");
+
+        /* compare: R13 is y, x is on the stack and R14 is the return address. Pops x and sets D to a value with the
+        ** sign of x - y, which is only subtracted when x and y have the same sign so that it can't overflow
+        */
+        line("($COMPARE)", "@SP", "AM=M-1", "D=M", "@$COMPARE.NEGATIVE", "D;JLT");
+        line("@R13", "D=M", "@$COMPARE.SUBTRACT", "D;JGE", "D=1", "@R14", "A=M", "0;JMP");
+        line("($COMPARE.NEGATIVE)", "@R13", "D=M", "@$COMPARE.SUBTRACT", "D;JLT", "D=-1", "@R14", "A=M", "0;JMP");
+        line("($COMPARE.SUBTRACT)", "@SP", "A=M", "D=M", "@R13", "D=D-M", "@R14", "A=M", "0;JMP");
+    }
+
+    // writes a function. depth is the number of values on the stack, the top one of which is in D
+    private void writeFunction(VMFile vmFile, VMCode code) {
+        functionName = vmFile.name(code.getName());
+        line("// function " + functionName, "(" + functionName + ")");
+        int locals = code.getLocals();
+        if (locals <= 2) {
+            for (int i = 0; i < locals; i++) {
+                line("@SP", "AM=M+1", "A=A-1", "M=0");
+            }
+        } else {
+            line("@SP", "A=M");
+            for (int i = 0; i < locals; i++) {
+                line("M=0", "A=A+1");
+            }
+            line("D=A", "@SP", "M=D");
+        }
+
+        // depth of the stack at each label, once it is known
+        Map<Long, Integer> labelDepths = new HashMap<Long, Integer>();
+        int depth = 0;
+        boolean reachable = true;
+        for (int i = 0; i < code.size(); i++) {
+            VMCode.Opcode op = code.op(i);
+            int arg = code.arg(i), value = code.value(i);
+            VMCode.Opcode next = i + 1 < code.size() ? code.op(i + 1) : null;
+            switch (op) {
+                case PUSH:
+                    if (depth >= 1 && isBinary(next) && writeOperation(next, arg, value)) {
+                        i++;
+                    } else if (depth >= 1 && next == VMCode.Opcode.POP) {
+                        // the top of the stack is kept in R15 while the value is moved
+                        line("@R15", "M=D");
+                        loadD(arg, value);
+                        storeD(code.arg(i + 1), code.value(i + 1));
+                        line("@R15", "D=M");
+                        i++;
+                    } else {
+                        if (depth >= 1) {
+                            pushD();
+                        }
+                        loadD(arg, value);
+                        depth++;
+                    }
+                    break;
+                case POP:
+                    storeD(arg, value);
+                    depth--;
+                    if (depth >= 1) {
+                        popD();
+                    }
+                    break;
+                case ADD:
+                    line("@SP", "AM=M-1", "D=D+M");
+                    depth--;
+                    break;
+                case SUB:
+                    line("@SP", "AM=M-1", "D=M-D");
+                    depth--;
+                    break;
+                case AND:
+                    line("@SP", "AM=M-1", "D=D&M");
+                    depth--;
+                    break;
+                case OR:
+                    line("@SP", "AM=M-1", "D=D|M");
+                    depth--;
+                    break;
+                case NEG:
+                    line("D=-D");
+                    break;
+                case NOT:
+                    // ~D is not 0 when D is not -1, which is when D + 1 is not 0
+                    if (next == VMCode.Opcode.IF_GOTO && depth == 1) {
+                        i++;
+                        line("@" + label(code.arg(i), code.value(i)), "D+1;JNE");
+                        depth = jump(labelDepths, code.arg(i), code.value(i), 0);
+                    } else {
+                        line("D=!D");
+                    }
+                    break;
+                case EQ:
+                case GT:
+                case LT:
+                    if (op == VMCode.Opcode.EQ) {
+                        line("@SP", "AM=M-1", "D=M-D");
+                    } else {
+                        // x - y can overflow, so the sign of the difference is found by $COMPARE
+                        String returnAddress = "$COMPARED." + labelCount++;
+                        line("@R13", "M=D", "@" + returnAddress, "D=A", "@R14", "M=D", "@$COMPARE", "0;JMP");
+                        line("(" + returnAddress + ")");
+                    }
+                    depth--;
+                    boolean negated = next == VMCode.Opcode.NOT && i + 2 < code.size()
+                            && code.op(i + 2) == VMCode.Opcode.IF_GOTO;
+                    if (depth == 1 && (next == VMCode.Opcode.IF_GOTO || negated)) {
+                        i += negated ? 2 : 1;
+                        line("@" + label(code.arg(i), code.value(i)), "D;" + jumpIf(op, negated));
+                        depth = jump(labelDepths, code.arg(i), code.value(i), 0);
+                    } else {
+                        String isTrue = "$TRUE." + labelCount, end = "$END." + labelCount++;
+                        line("@" + isTrue, "D;" + jumpIf(op, false), "D=0", "@" + end, "0;JMP");
+                        line("(" + isTrue + ")", "D=-1", "(" + end + ")");
+                    }
+                    break;
+                case LABEL:
+                    Integer known = labelDepths.get(labelKey(arg, value));
+                    if (known != null && reachable && known != depth) {
+                        throw new IllegalStateException("the depth of the stack can't be followed");
+                    }
+                    depth = known != null ? known : reachable ? depth : 0;
+                    labelDepths.put(labelKey(arg, value), depth);
+                    reachable = true;
+                    line("(" + label(arg, value) + ")");
+                    break;
+                case GOTO:
+                    line("@" + label(arg, value), "0;JMP");
+                    jump(labelDepths, arg, value, depth);
+                    reachable = false;
+                    break;
+                case IF_GOTO:
+                    depth--;
+                    if (depth == 0) {
+                        line("@" + label(arg, value), "D;JNE");
+                    } else {
+                        // the value below the condition is moved into D on both paths
+                        String taken = "$TAKEN." + labelCount, notTaken = "$NOT_TAKEN." + labelCount++;
+                        line("@" + taken, "D;JNE");
+                        popD();
+                        line("@" + notTaken, "0;JMP", "(" + taken + ")");
+                        popD();
+                        line("@" + label(arg, value), "0;JMP", "(" + notTaken + ")");
+                    }
+                    depth = jump(labelDepths, arg, value, depth);
+                    break;
+                case CALL:
+                    if (depth >= 1) {
+                        pushD();
+                    }
+                    String returnLabel = functionName + "$ret." + labelCount++;
+                    line("@" + returnLabel, "D=A", "@R14", "M=D", "@" + vmFile.name(arg), "D=A", "@R13", "M=D");
+                    loadConstant(value);
+                    line("@$CALL", "0;JMP", "(" + returnLabel + ")");
+                    depth += 1 - value;
+                    break;
+                case RETURN:
+                    line("@$RETURN", "0;JMP");
+                    reachable = false;
+                    break;
+                default:
+            }
+            if (depth < 0) {
+                throw new IllegalStateException("the depth of the stack can't be followed");
+            }
+        }
+    }
+
+    // writes the push of a value and an operation on it together, returning false if they can't be
+    private boolean writeOperation(VMCode.Opcode op, int segment, int index) {
+        String operand;
+        if (segment == VMCode.Segment.CONSTANT.ordinal() && index <= Short.MAX_VALUE) {
+            line("@" + index);
+            operand = "A";
+        } else if (address(segment, index) != null) {
+            line("@" + address(segment, index));
+            operand = "M";
+        } else if (pointer(segment) != null && index <= 8) {
+            pointTo(segment, index);
+            operand = "M";
+        } else {
+            return false;
+        }
+        switch (op) {
+            case ADD: line("D=D+" + operand); break;
+            case SUB: line("D=D-" + operand); break;
+            case AND: line("D=D&" + operand); break;
+            default: line("D=D|" + operand);
+        }
+        return true;
+    }
+
+    // loads a value from a segment into D
+    private void loadD(int segment, int index) {
+        if (segment == VMCode.Segment.CONSTANT.ordinal()) {
+            loadConstant(index);
+        } else if (address(segment, index) != null) {
+            line("@" + address(segment, index), "D=M");
+        } else if (index <= 1) {
+            pointTo(segment, index);
+            line("D=M");
+        } else {
+            line("@" + index, "D=A", "@" + pointer(segment), "A=D+M", "D=M");
+        }
+    }
+
+    // stores D in a segment
+    private void storeD(int segment, int index) {
+        if (address(segment, index) != null) {
+            line("@" + address(segment, index), "M=D");
+        } else if (index <= 8) {
+            pointTo(segment, index);
+            line("M=D");
+        } else {
+            line("@R13", "M=D", "@" + index, "D=A", "@" + pointer(segment), "D=D+M", "@R14", "M=D");
+            line("@R13", "D=M", "@R14", "A=M", "M=D");
+        }
+    }
+
+    private void loadConstant(int value) {
+        if (value < 0 || value > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("constant " + value + " does not fit in an A instruction");
+        }
+        if (value <= 1) {
+            line("D=" + value);
+        } else {
+            line("@" + value, "D=A");
+        }
+    }
+
+    // sets A to the address of a value in a segment reached through a pointer
+    private void pointTo(int segment, int index) {
+        line("@" + pointer(segment), index == 0 ? "A=M" : "A=M+1");
+        for (int i = 1; i < index; i++) {
+            line("A=A+1");
+        }
+    }
+
+    // returns the symbol of the address of a value in a segment at a fixed address, or null if it isn't in one
+    private String address(int segment, int index) {
+        switch (VMCode.Segment.values()[segment]) {
+            case STATIC: return className + "." + index;
+            case TEMP: return "R" + (5 + index);
+            case POINTER: return index == 0 ? "THIS" : "THAT";
+            default: return null;
+        }
+    }
+
+    // returns the pointer to a segment, or null if it isn't reached through one
+    private String pointer(int segment) {
+        switch (VMCode.Segment.values()[segment]) {
+            case LOCAL: return "LCL";
+            case ARGUMENT: return "ARG";
+            case THIS: return "THIS";
+            case THAT: return "THAT";
+            case CONSTANT: case STATIC: case TEMP: case POINTER: return null;
+            default: throw new IllegalArgumentException("segment " + VMCode.Segment.values()[segment]
+                    + " has no place in memory");
+        }
+    }
+
+    // records the depth of the stack at the label jumped to, and returns it
+    private int jump(Map<Long, Integer> labelDepths, int arg, int value, int depth) {
+        Integer known = labelDepths.put(labelKey(arg, value), depth);
+        if (known != null && known != depth) {
+            throw new IllegalStateException("the depth of the stack differs between jumps to " + label(arg, value));
+        }
+        return depth;
+    }
+
+    // returns the jump taken when a comparison, or its negation, is true, given D = x - y
+    private static String jumpIf(VMCode.Opcode op, boolean negated) {
+        switch (op) {
+            case EQ: return negated ? "JNE" : "JEQ";
+            case GT: return negated ? "JLE" : "JGT";
+            default: return negated ? "JGE" : "JLT";
+        }
+    }
+
+    private static boolean isBinary(VMCode.Opcode op) {
+        return op == VMCode.Opcode.ADD || op == VMCode.Opcode.SUB || op == VMCode.Opcode.AND || op == VMCode.Opcode.OR;
+    }
+
+    // returns the name of a label within the current function
+    private String label(int arg, int value) {
+        return functionName + "$" + VMCode.Label.values()[arg].name() + value;
+    }
+
+    private static long labelKey(int arg, int value) {
+        return ((long) arg << 32) | (value & 0xffffffffL);
+    }
+
+    // pushes D onto the stack in memory
+    private void pushD() {
+        line("@SP", "AM=M+1", "A=A-1", "M=D");
+    }
+
+    // pops the top of the stack in memory into D
+    private void popD() {
+        line("@SP", "AM=M-1", "D=M");
+    }
+
+    private void line(String... lines) {
+        for (String s : lines) {
+            asm.append(s).append('\n');
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/* records what the last successful build made of each .jack file in a directory: a hash of the file's contents, the
+** name of its class, the classes it refers to and the signature of its class, which is every symbol of its class scope.
+** Kept in a file next to the .vm files, so that a build can skip files which have not changed. The options the .vm
+** files were built with are recorded too, and a build with other options compiles every file
+**
+** options <options>
+** file Main.jack <hash>
+** class Main
+** uses Game Output
+** symbol <kind> <type> <name> <index> <parameter count or -1 if none were set> <parameter types...>
+** end
+*/
+public class BuildCache {
+    public static final String FILE_NAME = ".jackcache";
+    private static final String VERSION = "jackcache 2";
+
+    // what was made of a single .jack file
+    public static class Entry {
+        String hash;
+        String className;
+        Set<String> dependencies = new TreeSet<String>();
+        List<String> signature = new ArrayList<String>();
+    }
+
+    private File file;
+    private String options;
+    // entries by .jack file name
+    private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    public BuildCache(String directory, String options) {
+        this.file = new File(directory, FILE_NAME);
+        this.options = options;
+    }
+
+    // reads the entries of the cache file if there is one. A cache that can't be read is treated as empty
+    public void load() {
+        entries.clear();
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            if (!VERSION.equals(br.readLine()) || !("options " + options).equals(br.readLine())) {
+                return;
+            }
+            String line;
+            String fileName = null;
+            Entry entry = null;
+            while ((line = br.readLine()) != null) {
+                String[] words = line.split(" ");
+                if (words[0].compareTo("file") == 0) { // the file name may contain spaces, the hash can't
+                    fileName = line.substring("file ".length(), line.lastIndexOf(' '));
+                    entry = new Entry();
+                    entry.hash = words[words.length - 1];
+                } else if (words[0].compareTo("class") == 0) {
+                    entry.className = words[1];
+                } else if (words[0].compareTo("uses") == 0) {
+                    entry.dependencies.addAll(Arrays.asList(words).subList(1, words.length));
+                } else if (words[0].compareTo("symbol") == 0) {
+                    entry.signature.add(line.substring("symbol ".length()));
+                } else if (words[0].compareTo("end") == 0) {
+                    entries.put(fileName, entry);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+        }
+    }
+
+    // writes the entries to the cache file, printing to out if it can't be written
+    public void save(PrintStream out) {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            pw.println(VERSION);
+            pw.println("options " + options);
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                pw.println("file " + e.getKey() + " " + entry.hash);
+                pw.println("class " + entry.className);
+                pw.println("uses" + (entry.dependencies.isEmpty() ? "" : " " + String.join(" ", entry.dependencies)));
+                for (String s : entry.signature) {
+                    pw.println("symbol " + s);
+                }
+                pw.println("end");
+            }
+        } catch (IOException e) {
+            out.println("error: could not write build cache");
+        }
+    }
+
+    // forgets every entry, so that the next build compiles every file
+    public void clear() {
+        entries.clear();
+    }
+
+    // removes the cache file, so that an unfinished build is never mistaken for a successful one
+    public void delete() {
+        file.delete();
+    }
+
+    public Entry get(String fileName) {
+        return entries.get(fileName);
+    }
+
+    public void put(String fileName, Entry entry) {
+        entries.put(fileName, entry);
+    }
+
+    // keeps only the entries of the given files
+    public void retain(Set<String> fileNames) {
+        entries.keySet().retainAll(fileNames);
+    }
+
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    // returns a hash of the contents of a file
+    public static String hash(File file) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(Files.readAllBytes(file.toPath())));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return "-";
+        }
+    }
+
+    // returns the signature of a class, one line for each symbol of its class scope
+    public static List<String> signature(SymbolTable classTable) {
+        List<String> signature = new ArrayList<String>();
+        for (Symbol s : classTable.getSymbols()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(s.getKind()).append(' ').append(s.getType()).append(' ').append(s.getName()).append(' ')
+                    .append(s.getIndex());
+            int[] params = s.getParamTypes();
+            sb.append(' ').append(params == null ? -1 : params.length);
+            if (params != null) {
+                for (int p : params) {
+                    sb.append(' ').append(Names.name(p));
+                }
+            }
+            signature.add(sb.toString());
+        }
+        return signature;
+    }
+
+    // rebuilds the symbol table of a class scope from its signature
+    public static SymbolTable classTable(List<String> signature) {
+        SymbolTable classTable = new SymbolTable();
+        for (String line : signature) {
+            String[] words = line.split(" ");
+            Symbol symbol = new Symbol();
+            symbol.setKind(Symbol.SymbolKind.valueOf(words[0]));
+            symbol.setType(Names.id(words[1]));
+            symbol.setName(Names.id(words[2]));
+            symbol.setIndex(Integer.parseInt(words[3]));
+            int paramCount = Integer.parseInt(words[4]);
+            if (paramCount >= 0) {
+                int[] params = new int[paramCount];
+                for (int i = 0; i < paramCount; i++) {
+                    params[i] = Names.id(words[5 + i]);
+                }
+                symbol.setParamTypes(params);
+            }
+            classTable.insert(symbol);
+        }
+        return classTable;
+    }
+}
@@ -0,0 +1,335 @@
+import java.io.PrintStream;
+
+/* generates the vm code of a class from its syntax tree, once the semantic pass has noted on the tree the symbols and
+** counts it found. The code is written in the order the class was read
+*/
+public class CodeGenPass {
+
+    CodeGenerator codeGenerator;
+    SyntaxTree tree = null;
+    String directory;
+    // class and subroutine code is being generated for, for the messages about optimisations
+    String className = null, subroutineName = null;
+    PrintStream out = System.out;
+
+    public CodeGenPass(CodeGenerator codeGenerator, String directory) {
+        this.codeGenerator = codeGenerator;
+        this.directory = directory;
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    public void generate(SyntaxTree tree) {
+        this.tree = tree;
+        className = tree.lexeme(tree.token(0));
+        // create vm file for current class
+        codeGenerator.createVMFile(className, directory);
+        for (int member = tree.firstChild(0); member != SyntaxTree.NONE; member = tree.next(member)) {
+            if (tree.kind(member) == SyntaxTree.Kind.SUBROUTINE) {
+                subroutineDeclar(member);
+            }
+            codeGenerator.printToFile();
+        }
+        codeGenerator.reset();
+        codeGenerator.closeVMFile();
+        this.tree = null;
+    }
+
+    private void subroutineDeclar(int node) {
+        int first = tree.token(node);
+        subroutineName = tree.lexeme(first + 2);
+        // allocate memory for new object if constructor has been called
+        if (tree.lexeme(first).compareTo("constructor") == 0) {
+            codeGenerator.writePush(VMCode.Segment.CONSTANT, tree.value(0));
+            codeGenerator.writeFunction("Memory", "alloc", 1);
+            codeGenerator.writePop(VMCode.Segment.POINTER, 0);
+        } else if (tree.lexeme(first).compareTo("method") == 0) {
+            codeGenerator.writePush(VMCode.Segment.ARGUMENT, 0);
+            codeGenerator.writePop(VMCode.Segment.POINTER, 0);
+        }
+        int body = tree.firstChild(node);
+        while (tree.kind(body) == SyntaxTree.Kind.PARAMETER) {
+            body = tree.next(body);
+        }
+        statements(body);
+        codeGenerator.writeFuncDeclar(className, subroutineName, tree.value(node));
+    }
+
+    // pushes a variable, using its index and segment location
+    private void push(Symbol s) {
+        VMCode.Segment seg = s.getKind().getSegment();
+        if (seg != null) {
+            codeGenerator.writePush(seg, s.getIndex());
+        }
+    }
+
+    // pops to a variable, using its index and segment location
+    private void pop(Symbol s) {
+        VMCode.Segment seg = s.getKind().getSegment();
+        if (seg != null) {
+            codeGenerator.writePop(seg, s.getIndex());
+        }
+    }
+
+    // statement grammar
+
+    private void statements(int node) {
+        for (int stmt = tree.firstChild(node); stmt != SyntaxTree.NONE; stmt = tree.next(stmt)) {
+            switch (tree.kind(stmt)) {
+                case VAR -> { }
+                case LET -> letStmt(stmt);
+                case IF -> ifStmt(stmt);
+                case WHILE -> whileStmt(stmt);
+                case DO -> {
+                    call(tree.firstChild(stmt), true);
+                    codeGenerator.writePop(VMCode.Segment.TEMP, 0);
+                }
+                case RETURN -> {
+                    if (tree.firstChild(stmt) != SyntaxTree.NONE) {
+                        expression(tree.firstChild(stmt));
+                    } else {
+                        codeGenerator.writePush(VMCode.Segment.CONSTANT, 0);
+                    }
+                    codeGenerator.writeReturn();
+                }
+                default -> throw new IllegalStateException(tree.kind(stmt).name());
+            }
+        }
+    }
+
+    private void letStmt(int node) {
+        Symbol target = tree.symbol(node);
+        int value = tree.firstChild(node);
+        if (tree.next(value) == SyntaxTree.NONE) {
+            expression(value);
+            pop(target);
+            return;
+        }
+        expression(value);
+        push(target);
+        codeGenerator.writeArithmetic(VMCode.Opcode.ADD); // add the array base address and index
+        expression(tree.next(value));
+        codeGenerator.writePop(VMCode.Segment.TEMP, 0); // tempoarily store result
+        codeGenerator.writePop(VMCode.Segment.POINTER, 1);
+        codeGenerator.writePush(VMCode.Segment.TEMP, 0);
+        codeGenerator.writePop(VMCode.Segment.THAT, 0);
+    }
+
+    private void ifStmt(int node) {
+        int thisLabelNum = codeGenerator.getLabelNum(true);
+        codeGenerator.incrementLabelNum(true);
+        int condition = codeGenerator.mark();
+        expression(tree.firstChild(node));
+        // a constant condition needs no jumps, and the code of the branch that is never taken is left out
+        Boolean constant = codeGenerator.constantCondition(condition);
+        VMCode skipped = null;
+        if (constant == null) {
+            codeGenerator.writeIf(VMCode.Label.IF_TRUE, thisLabelNum);
+            codeGenerator.writeGoto(VMCode.Label.IF_FALSE, thisLabelNum);
+            codeGenerator.writeLabel(VMCode.Label.IF_TRUE, thisLabelNum);
+        } else {
+            codeGenerator.truncate(condition);
+            if (!constant) {
+                skipped = codeGenerator.skipCode();
+            }
+        }
+        int then = tree.next(tree.firstChild(node));
+        statements(then);
+        if (skipped != null) {
+            codeGenerator.resumeCode(skipped);
+            skipped = null;
+        }
+
+        int otherwise = tree.next(then);
+        if (otherwise != SyntaxTree.NONE) {
+            if (constant == null) {
+                codeGenerator.writeGoto(VMCode.Label.IF_END, thisLabelNum);
+                codeGenerator.writeLabel(VMCode.Label.IF_FALSE, thisLabelNum);
+            } else if (constant) {
+                skipped = codeGenerator.skipCode();
+            }
+            statements(otherwise);
+            if (skipped != null) {
+                codeGenerator.resumeCode(skipped);
+            } else if (constant == null) {
+                codeGenerator.writeLabel(VMCode.Label.IF_END, thisLabelNum);
+            }
+        } else if (constant == null) {
+            codeGenerator.writeLabel(VMCode.Label.IF_FALSE, thisLabelNum);
+        }
+    }
+
+    private void whileStmt(int node) {
+        int thisLabelNum = codeGenerator.getLabelNum(false);
+        codeGenerator.incrementLabelNum(false);
+        codeGenerator.writeLabel(VMCode.Label.WHILE_EXP, thisLabelNum);
+        int condition = codeGenerator.mark();
+        expression(tree.firstChild(node));
+        /* a loop whose condition is always true needs no test, and as it can only be left by returning nothing
+        ** jumps to its end. A loop whose condition is always false is left out along with its label
+        */
+        Boolean constant = codeGenerator.constantCondition(condition);
+        VMCode skipped = null;
+        if (constant == null) {
+            codeGenerator.writeArithmetic(VMCode.Opcode.NOT); // negate expression
+            codeGenerator.writeIf(VMCode.Label.WHILE_END, thisLabelNum);
+        } else if (constant) {
+            codeGenerator.truncate(condition);
+        } else {
+            codeGenerator.truncate(condition - 1);
+            skipped = codeGenerator.skipCode();
+        }
+        statements(tree.next(tree.firstChild(node)));
+        if (skipped != null) {
+            codeGenerator.resumeCode(skipped);
+        } else {
+            codeGenerator.writeGoto(VMCode.Label.WHILE_EXP, thisLabelNum);
+            if (constant == null) {
+                codeGenerator.writeLabel(VMCode.Label.WHILE_END, thisLabelNum);
+            }
+        }
+    }
+
+    // expression grammar
+
+    private void expression(int node) {
+        int child = tree.firstChild(node);
+        operand(child);
+        for (int prev = child; (child = tree.next(prev)) != SyntaxTree.NONE; prev = child) {
+            operand(child);
+            if (tree.lexeme(tree.end(prev) + 1).compareTo("&") == 0) {
+                codeGenerator.writeArithmetic(VMCode.Opcode.AND);
+            } else {
+                codeGenerator.writeArithmetic(VMCode.Opcode.OR);
+            }
+        }
+    }
+
+    // writes the code of the operands of a binary operator, each followed by the operator before it
+    private void binary(int node) {
+        int child = tree.firstChild(node);
+        int left = codeGenerator.mark(); // where the code of each operand starts
+        operand(child);
+        for (int prev = child; (child = tree.next(prev)) != SyntaxTree.NONE; prev = child) {
+            String op = tree.lexeme(tree.end(prev) + 1);
+            int right = codeGenerator.mark();
+            operand(child);
+            switch (op) {
+                case "=" -> codeGenerator.writeArithmetic(VMCode.Opcode.EQ);
+                case ">" -> codeGenerator.writeArithmetic(VMCode.Opcode.GT);
+                case "<" -> codeGenerator.writeArithmetic(VMCode.Opcode.LT);
+                case "+" -> codeGenerator.writeArithmetic(VMCode.Opcode.ADD);
+                case "-" -> codeGenerator.writeArithmetic(VMCode.Opcode.SUB);
+                default -> {
+                    String optimised = op.compareTo("*") == 0 ? codeGenerator.writeMultiply(left, right)
+                            : codeGenerator.writeDivide(left, right);
+                    // report each call to Math left out
+                    if (optimised != null) {
+                        out.println("optimised: " + optimised + " at line " + tree.line(tree.end(child)) + " of "
+                                + className + "." + subroutineName);
+                    }
+                }
+            }
+        }
+    }
+
+    private void operand(int node) {
+        int first = tree.token(node);
+        switch (tree.kind(node)) {
+            case RELATIONAL, ARITHMETIC, TERM -> binary(node);
+            case UNARY -> {
+                operand(tree.firstChild(node));
+                if (tree.lexeme(first).compareTo("-") == 0) {
+                    codeGenerator.writeArithmetic(VMCode.Opcode.NEG);
+                } else {
+                    codeGenerator.writeArithmetic(VMCode.Opcode.NOT);
+                }
+            }
+            case PAREN -> expression(tree.firstChild(node));
+            case INTEGER -> codeGenerator.writePush(VMCode.Segment.CONSTANT, tree.value(node));
+            case STRING -> {
+                // process string into suitable vm format
+                String lexeme = tree.lexeme(first);
+                codeGenerator.writePush(VMCode.Segment.CONSTANT, lexeme.length() - 2);
+                codeGenerator.writeFunction("String", "new", 1);
+                for (int i = 1; i < lexeme.length() - 1; i++) {
+                    codeGenerator.writePush(VMCode.Segment.CONSTANT, Character.codePointAt(lexeme, i));
+                    codeGenerator.writeFunction("String", "appendChar", 2);
+                }
+            }
+            case KEYWORD -> keyword(tree.lexeme(first));
+            case VARIABLE -> {
+                if (tree.firstChild(node) == SyntaxTree.NONE) {
+                    push(tree.symbol(node));
+                } else {
+                    expression(tree.firstChild(node));
+                    push(tree.symbol(node));
+                    arrayElement();
+                }
+            }
+            case MEMBER -> {
+                if (tree.symbol(node) != null) {
+                    push(tree.symbol(node));
+                }
+                codeGenerator.writePop(VMCode.Segment.POINTER, 0);
+                codeGenerator.addObjectVarDetails(tree.reference(node));
+                if (tree.firstChild(node) != SyntaxTree.NONE) {
+                    expression(tree.firstChild(node));
+                    arrayElement();
+                }
+            }
+            case CALL -> call(node, false);
+            default -> throw new IllegalStateException(tree.kind(node).name());
+        }
+    }
+
+    private void keyword(String lexeme) {
+        switch (lexeme) {
+            case "true" -> {
+                codeGenerator.writePush(VMCode.Segment.CONSTANT, 1);
+                codeGenerator.writeArithmetic(VMCode.Opcode.NEG);
+            }
+            case "false", "null" -> codeGenerator.writePush(VMCode.Segment.CONSTANT, 0);
+            case "this" -> codeGenerator.writePush(VMCode.Segment.POINTER, 0);
+            default -> { }
+        }
+    }
+
+    // pushes the element of an array whose base address and index have been pushed
+    private void arrayElement() {
+        codeGenerator.writeArithmetic(VMCode.Opcode.ADD); // add the array base address and index
+        codeGenerator.writePop(VMCode.Segment.POINTER, 1);
+        codeGenerator.writePush(VMCode.Segment.THAT, 0);
+    }
+
+    /* writes a call, pushing the object it is made on first. A call of a do statement to a subroutine of this class is
+    ** made on this object
+    */
+    private void call(int node, boolean isStatement) {
+        int first = tree.token(node);
+        Symbol object = tree.symbol(node);
+        String callClass, name;
+        boolean pushedObject;
+        if (tree.lexeme(first + 1).compareTo(".") == 0) {
+            callClass = object != null ? object.getType() : tree.lexeme(first);
+            name = tree.lexeme(first + 2);
+            pushedObject = object != null;
+            if (pushedObject) {
+                push(object);
+            }
+        } else {
+            callClass = className;
+            name = tree.lexeme(first);
+            pushedObject = isStatement;
+            if (pushedObject) {
+                codeGenerator.writePush(VMCode.Segment.POINTER, 0); // is a method so push the object
+            }
+        }
+        for (int arg = tree.firstChild(node); arg != SyntaxTree.NONE; arg = tree.next(arg)) {
+            expression(arg);
+        }
+        codeGenerator.writeFunction(callClass, name, tree.value(node) + (pushedObject ? 1 : 0));
+    }
+}
@@ -1,23 +1,83 @@
 import java.io.File;
-import java.io.FileWriter;
-import java.io.BufferedWriter;
-import java.io.PrintWriter;
-import java.util.Scanner;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.FileNotFoundException;
-import java.lang.IllegalArgumentException;
-import java.util.ArrayList;
+import java.io.PrintStream;
 import java.util.List;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
 
 public class CodeGenerator {
 
     private int whileLabelNum = 0, ifLabelNum = 0; // keeps track of highest label number for vm
     private File file;
-    private PrintWriter pw;
-    private List <String> fileInput = new ArrayList <String>();
-    private int lineCount = 0;
+    // code of the current class, written to its file once the class has been parsed
+    private VMFile vmFile;
+    // code of the current function, and the code being written to, which is thrown away while it can't be reached
+    private VMCode function = new VMCode();
+    private VMCode code = function;
+    // number of blocks being left out, within which a label doesn't make code reachable again
+    private int skipping = 0;
+    // true if the code of the next class is held until writeHeldFile is called, rather than written once it is parsed
+    private boolean hold = false;
+    private VMFile heldFile = null;
+    // where error messages are printed
+    private PrintStream out = System.out;
+    // optimiser run on the code of each class before it is written, or null if there is none
+    private Peephole peephole = null;
+    /* how far the code is optimised as it is generated. 1 or more folds expressions of constants and leaves out code
+    ** that can't be reached, and 2 or more does multiplications and divisions by constants without calling Math where
+    ** it can
+    */
+    public static final int MAX_OPTIMISATION = 2;
+    private int optimisation = 0;
+    // program the code of each class is added to when assembly is written rather than .vm files, or null
+    private AsmWriter asmWriter = null;
+    // true if the code of each class is written as bytecode rather than text
+    private boolean binary = false;
+    // program the code of each class is added to when it is linked before being written, or null
+    private Linker linker = null;
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    public void setPeephole(Peephole peephole) {
+        this.peephole = peephole;
+    }
+
+    public Peephole getPeephole() {
+        return peephole;
+    }
+
+    public void setOptimisation(int optimisation) {
+        this.optimisation = optimisation;
+    }
+
+    public int getOptimisation() {
+        return optimisation;
+    }
+
+    public void setAsmWriter(AsmWriter asmWriter) {
+        this.asmWriter = asmWriter;
+    }
+
+    public AsmWriter getAsmWriter() {
+        return asmWriter;
+    }
+
+    public void setLinker(Linker linker) {
+        this.linker = linker;
+    }
+
+    public Linker getLinker() {
+        return linker;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
 
     public int getLabelNum(boolean isIf) {
         if (isIf){
@@ -38,131 +98,417 @@ public class CodeGenerator {
     public void reset(){
         whileLabelNum = 0;
         ifLabelNum = 0;
-        lineCount = 0;
-        fileInput.clear();
+        function = new VMCode();
+        code = function;
+        skipping = 0;
+    }
+
+    // holds the vm code of the next class until writeHeldFile is called
+    public void holdVMFile(){
+        hold = true;
     }
-    // creates a .vm file for current class
+
+    // writes the vm code held back to its file, unless it still has references to resolve
+    public void writeHeldFile(){
+        if (heldFile.isResolved()) {
+            heldFile.write(out);
+        }
+        heldFile = null;
+        hold = false;
+    }
+
+    // starts the vm code for current class. Nothing is written until the class has been parsed
     public void createVMFile(String name, String directory){
-        // create file
-        try {
-            file = new File(directory + "/" + name + ".vm");
-            file.createNewFile();
-        } catch (IOException e) {
-            System.out.println("error: file could not be created");
+        file = new File(directory + "/" + name + (binary ? VMBytecode.EXTENSION : ".vm"));
+        vmFile = new VMFile(file);
+        vmFile.setPeephole(peephole);
+        vmFile.setAsmWriter(asmWriter);
+        vmFile.setBinary(binary);
+        vmFile.setLinker(linker);
+    }
+
+    // writes the code of the current class to its file, unless it is held or has references still to be resolved
+    public void closeVMFile(){
+        if (hold) {
+            heldFile = vmFile;
+        } else if (vmFile.isResolved()) {
+            vmFile.write(out);
         }
-        // create reader for file
-        try {
-            pw = new PrintWriter(new BufferedWriter(new FileWriter(file)));
-        } catch (IOException e) {
-            System.out.println("error: error writing to file");
+        vmFile = null;
+    }
+
+    // adds the code of the current function to the code of the current class
+    public void printToFile(){
+        if (!function.isEmpty()) {
+            vmFile.add(function);
         }
+        function = new VMCode();
+        code = function;
     }
 
-    // closes current file
-    public void closeVMFile(){pw.close();}
+    // removes the code written from index start onwards
+    public void truncate(int start){
+        code.truncate(start);
+    }
 
-    // prints fileInput list into file
-    public void printToFile(){
-        if (fileInput.size() > 0) {
-            for (String s : fileInput) {
-                pw.println(s);
-            }
+    /* returns true or false if the code from index start to the end pushes a constant, which is true if it isn't 0.
+    ** Returns null if it doesn't, or if code isn't being optimised
+    */
+    public Boolean constantCondition(int start){
+        int end = code.size();
+        if (optimisation < 1 || end == start || constantLength(end) != end - start) {
+            return null;
         }
-        fileInput.clear();
+        return constantValue(end) != 0;
+    }
+
+    /* starts leaving out the code written, for a block that can't be reached. Returns the code to carry on writing to
+    ** once the block has been parsed
+    */
+    public VMCode skipCode(){
+        VMCode resume = code;
+        code = new VMCode();
+        skipping++;
+        return resume;
+    }
 
+    // carries on writing code where it was before skipCode
+    public void resumeCode(VMCode resume){
+        code = resume;
+        skipping--;
+    }
+
+    // the code after an instruction which never carries on to the next is thrown away until the next label
+    private void unreachable(){
+        if (optimisation >= 1) {
+            code = new VMCode();
+        }
     }
 
     // writes push command
-    public void writePush(String seg, String value){
-        fileInput.add("push "+ seg +" "+ value);
-        lineCount++;
+    public void writePush(VMCode.Segment seg, int value){
+        code.add(VMCode.Opcode.PUSH, seg.ordinal(), value);
     }
 
     // writes pop command
-    public void writePop(String seg, String value){
-        fileInput.add("pop " +seg+" "+ value);
-        lineCount++;
+    public void writePop(VMCode.Segment seg, int value){
+        code.add(VMCode.Opcode.POP, seg.ordinal(), value);
+    }
+
+    // writes arithmetic command, working out its result instead if its operands are constants
+    public void writeArithmetic(VMCode.Opcode command){
+        if (optimisation >= 1 && foldArithmetic(command)) {
+            return;
+        }
+        code.add(command, 0, 0);
+    }
+
+    // returns the index of the next instruction of the current function, where the code of an operand will start
+    public int mark(){
+        return code.size();
+    }
+
+    /* writes a call to Math.multiply for the operands whose code starts at index left and index right. The product of
+    ** constants is worked out instead, and from optimisation level 2 a multiplication by a constant is done with
+    ** additions. Returns what was written instead of the call, or null if the call was written
+    */
+    public String writeMultiply(int left, int right){
+        if (optimisation >= 1 && foldConstants((a, b) -> a * b)) {
+            return "Math.multiply of constants folded";
+        }
+        if (optimisation >= 2) {
+            String reduced = reduceMultiply(left, right);
+            if (reduced != null) {
+                return reduced;
+            }
+        }
+        writeFunction("Math", "multiply", 2);
+        return null;
+    }
+
+    /* writes a call to Math.divide for the operands whose code starts at index left and index right. The quotient of
+    ** constants is worked out instead unless the divisor is 0, and from optimisation level 2 a division by 1 or -1 is
+    ** left out. Returns what was written instead of the call, or null if the call was written
+    */
+    public String writeDivide(int left, int right){
+        int end = code.size();
+        if (optimisation >= 1 && constantLength(end) > 0 && constantValue(end) != 0 && foldConstants((a, b) -> a / b)) {
+            return "Math.divide of constants folded";
+        }
+        if (optimisation >= 2 && constantLength(end) == end - right) {
+            int divisor = constantValue(end);
+            if (divisor == 1 || divisor == -1) {
+                code.truncate(right);
+                if (divisor == -1) {
+                    code.add(VMCode.Opcode.NEG, 0, 0);
+                }
+                return "Math.divide by " + divisor + " replaced with " + (code.size() - right) + " instructions";
+            }
+        }
+        writeFunction("Math", "divide", 2);
+        return null;
+    }
+
+    /* multiplies the operands starting at index left and index right without calling Math.multiply if one of them is
+    ** a constant, returning a description of what was done, or null if nothing was
+    */
+    private String reduceMultiply(int left, int right){
+        int end = code.size();
+        int factor, operandStart, operandEnd;
+        if (constantLength(end) == end - right) {
+            factor = constantValue(end);
+            operandStart = left;
+            operandEnd = right;
+        } else if (constantLength(right) == right - left && !hasUnresolved(right, end)) {
+            factor = constantValue(right);
+            operandStart = right;
+            operandEnd = end;
+        } else {
+            return null;
+        }
+        if (factor == Short.MIN_VALUE
+                || multiplyLength(operandStart, operandEnd, Math.abs(factor)) > MAX_MULTIPLY_LENGTH) {
+            return null;
+        }
+
+        // remove the constant, leaving the code of the other operand from left to the end of the function
+        if (operandStart == left) {
+            code.truncate(right);
+        } else {
+            code.remove(left, right);
+        }
+        operandEnd = code.size();
+        if (factor == 0 && isPure(left, operandEnd)) {
+            code.truncate(left);
+            writeConstant(0);
+            return "Math.multiply by 0 replaced with 1 instructions";
+        }
+        if (factor == 0) {
+            // the operand is still worked out for its side effects
+            writePop(VMCode.Segment.TEMP, 0);
+            writeConstant(0);
+        } else {
+            // by 1 or -1 the other operand is left alone
+            if (Math.abs(factor) > 1) {
+                writeMultiplyChain(left, Math.abs(factor));
+            }
+            if (factor < 0) {
+                code.add(VMCode.Opcode.NEG, 0, 0);
+            }
+        }
+        return "Math.multiply by " + factor + " replaced with " + (code.size() - operandEnd) + " instructions";
     }
 
-    // writes arithmetic command
-    public void writeArithmetic(String command){
-        fileInput.add(command);
-        lineCount++;
+    // longest sequence of additions written instead of a call to Math.multiply, which loops over every bit of a value
+    private static final int MAX_MULTIPLY_LENGTH = 60;
+
+    /* multiplies the value left on the stack by the code from index start to the end of the function by a factor of 2
+    ** or more, by doubling it and adding it for each bit of the factor after the highest. The value is pushed again
+    ** by repeating its push if that is all its code is, or else it is kept in temp 1, and doubling uses temp 0
+    */
+    private void writeMultiplyChain(int start, int factor){
+        VMCode.Segment segment;
+        int index;
+        if (isRepeatablePush(start, code.size())) {
+            segment = VMCode.Segment.values()[code.arg(start)];
+            index = code.value(start);
+        } else {
+            segment = VMCode.Segment.TEMP;
+            index = 1;
+            writePop(segment, index);
+            writePush(segment, index);
+        }
+        boolean once = true; // true while the stack holds the value itself
+        for (int bit = Integer.highestOneBit(factor) >> 1; bit > 0; bit >>= 1) {
+            if (once) {
+                writePush(segment, index);
+            } else {
+                writePop(VMCode.Segment.TEMP, 0);
+                writePush(VMCode.Segment.TEMP, 0);
+                writePush(VMCode.Segment.TEMP, 0);
+            }
+            code.add(VMCode.Opcode.ADD, 0, 0);
+            once = false;
+            if ((factor & bit) != 0) {
+                writePush(segment, index);
+                code.add(VMCode.Opcode.ADD, 0, 0);
+            }
+        }
+    }
+
+    // returns the number of instructions writeMultiplyChain would write for the code from index start to end
+    private int multiplyLength(int start, int end, int factor){
+        int length = isRepeatablePush(start, end) ? 0 : 2;
+        boolean once = true;
+        for (int bit = Integer.highestOneBit(factor) >> 1; bit > 0; bit >>= 1) {
+            length += once ? 2 : 4;
+            once = false;
+            if ((factor & bit) != 0) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    // returns true if the code from index start to end is a single push which can be repeated to push the same value
+    private boolean isRepeatablePush(int start, int end){
+        return end - start == 1 && code.op(start) == VMCode.Opcode.PUSH && code.arg(start) >= 0
+                && code.arg(start) != VMCode.Segment.TEMP.ordinal();
+    }
+
+    // returns true if the code from index start to end only pushes values and works on them, so can be left out
+    private boolean isPure(int start, int end){
+        for (int i = start; i < end; i++) {
+            VMCode.Opcode op = code.op(i);
+            if (op == VMCode.Opcode.PUSH ? code.arg(i) < 0 : op.compareTo(VMCode.Opcode.ADD) < 0
+                    || op.compareTo(VMCode.Opcode.NOT) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // returns true if the code from index start to end has a push of a variable of another class still to be resolved
+    private boolean hasUnresolved(int start, int end){
+        for (int i = start; i < end; i++) {
+            if (code.op(i) == VMCode.Opcode.PUSH && code.arg(i) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // replaces the operands of an arithmetic command with its result if they are constants, returning false if not
+    private boolean foldArithmetic(VMCode.Opcode command){
+        switch (command) {
+            case NEG: return foldConstant(a -> -a);
+            case NOT: return foldConstant(a -> ~a);
+            case ADD: return foldConstants((a, b) -> a + b);
+            case SUB: return foldConstants((a, b) -> a - b);
+            case AND: return foldConstants((a, b) -> a & b);
+            case OR: return foldConstants((a, b) -> a | b);
+            case EQ: return foldConstants((a, b) -> a == b ? -1 : 0);
+            case GT: return foldConstants((a, b) -> a > b ? -1 : 0);
+            case LT: return foldConstants((a, b) -> a < b ? -1 : 0);
+            default: return false;
+        }
+    }
+
+    // replaces the push of a constant with the push of f of it. Returns false if the last value pushed isn't constant
+    private boolean foldConstant(IntUnaryOperator f){
+        int end = code.size();
+        int length = constantLength(end);
+        if (length == 0) {
+            return false;
+        }
+        int a = constantValue(end);
+        code.truncate(end - length);
+        writeConstant(f.applyAsInt(a));
+        return true;
+    }
+
+    /* replaces the pushes of two constants with the push of f of them. Returns false if the last two values pushed
+    ** aren't both constant
+    */
+    private boolean foldConstants(IntBinaryOperator f){
+        int end = code.size();
+        int lengthB = constantLength(end);
+        int lengthA = lengthB == 0 ? 0 : constantLength(end - lengthB);
+        if (lengthA == 0) {
+            return false;
+        }
+        int a = constantValue(end - lengthB), b = constantValue(end);
+        code.truncate(end - lengthB - lengthA);
+        writeConstant(f.applyAsInt(a, b));
+        return true;
+    }
+
+    /* returns the number of instructions pushing a constant that end at index end, or 0 if they don't push one. A
+    ** constant is pushed by push constant n, optionally followed by neg or not
+    */
+    private int constantLength(int end){
+        if (isConstantPush(end - 1)) {
+            return 1;
+        }
+        if (end >= 2 && (code.op(end - 1) == VMCode.Opcode.NEG || code.op(end - 1) == VMCode.Opcode.NOT)
+                && isConstantPush(end - 2)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    // returns the value of the constant pushed by the instructions ending at index end
+    private int constantValue(int end){
+        if (isConstantPush(end - 1)) {
+            return code.value(end - 1);
+        }
+        int value = code.value(end - 2);
+        return (short) (code.op(end - 1) == VMCode.Opcode.NEG ? -value : ~value);
+    }
+
+    // returns true if instruction i pushes a constant which fits in the 15 bits allowed
+    private boolean isConstantPush(int i){
+        return i >= 0 && code.op(i) == VMCode.Opcode.PUSH && code.arg(i) == VMCode.Segment.CONSTANT.ordinal()
+                && code.value(i) >= 0 && code.value(i) <= Short.MAX_VALUE;
+    }
+
+    /* writes the push of a constant, wrapped to 16 bits. Constants can't be negative, so a negative value is pushed
+    ** as the negation of its absolute value, or as not 32767 for -32768
+    */
+    private void writeConstant(int value){
+        short v = (short) value;
+        if (v >= 0) {
+            writePush(VMCode.Segment.CONSTANT, v);
+        } else if (v == Short.MIN_VALUE) {
+            writePush(VMCode.Segment.CONSTANT, Short.MAX_VALUE);
+            code.add(VMCode.Opcode.NOT, 0, 0);
+        } else {
+            writePush(VMCode.Segment.CONSTANT, -v);
+            code.add(VMCode.Opcode.NEG, 0, 0);
+        }
     }
 
     // writes label command
-    public void writeLabel(String s,int n){
-        fileInput.add("label "+ s + n);
-        lineCount++;
+    public void writeLabel(VMCode.Label label, int n){
+        if (skipping == 0) {
+            code = function; // a jump can reach the label
+        }
+        code.add(VMCode.Opcode.LABEL, label.ordinal(), n);
     }
 
     // writes goto command
-    public void writeGoto(String s,int n){
-        fileInput.add("goto " + s + n);
-        lineCount++;
+    public void writeGoto(VMCode.Label label, int n){
+        code.add(VMCode.Opcode.GOTO, label.ordinal(), n);
+        unreachable();
     }
 
     // writes if-goto command
-    public void writeIf(String s, int n){
-        fileInput.add("if-goto " + s + n);
-        lineCount++;
+    public void writeIf(VMCode.Label label, int n){
+        code.add(VMCode.Opcode.IF_GOTO, label.ordinal(), n);
     }
 
     // writes function command
     public void writeFunction(String className, String name, int argsNum) {
-        fileInput.add("call " +className+"."+ name + " " + argsNum);
-        lineCount++;
+        code.add(VMCode.Opcode.CALL, vmFile.nameIndex(className + "." + name), argsNum);
     }
 
-    // writes function declaration
+    // writes function declaration, which comes before the code of the function however late it is known
     public void writeFuncDeclar(String className, String name, int paramNumber) {
-        fileInput.add(0,"function " + className + "." + name + " " + paramNumber);
-        lineCount++;
+        function.declare(vmFile.nameIndex(className + "." + name), paramNumber);
     }
 
     // writes return command
     public void writeReturn(){
-        fileInput.add("return");
-        lineCount++;
+        code.add(VMCode.Opcode.RETURN, 0, 0);
+        unreachable();
     }
 
-    // returns details needed for to resolve a class variable call
+    /* leaves an unresolved push of a variable from another class, to be filled in once all classes have been parsed.
+    ** The .vm file, function and index of the push are added to the details of the reference
+    */
     public void addObjectVarDetails(List<Object> list){
-        list.add(file);
-        list.add(lineCount);
+        list.add(vmFile);
+        list.add(code);
+        list.add(vmFile.addUnresolved(code));
     }
-
-    // inserts line into specified position in specified file
-    public static void insertLine(String line, File file, int index){
-        // read file to array list, insert line, print back to file
-        List<String> fileContent = new ArrayList<String>();
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            while (br.ready()) {
-                fileContent.add(br.readLine());
-            }
-            fileContent.add(index, line);
-            br.close();
-
-        } catch (FileNotFoundException e){
-            System.out.println("error: could not find file");
-        } catch (IOException e){
-            System.out.println("error: could not read file");
-        }
-        // now write the contents back into file
-        try {
-            PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)));
-            if (fileContent.size() > 0) {
-                for (String s : fileContent) {
-                    pw.println(s);
-                }
-            }
-            pw.close();
-        } catch (FileNotFoundException e){
-            System.out.println("error: could not find file");
-        }catch (IOException e) {
-            System.out.println("error: error writing to file");
-        }
-    }
-
-
-}
\ No newline at end of file
+}
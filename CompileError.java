@@ -0,0 +1,10 @@
+/* thrown when an error stops compilation. The error message has already been printed by the time it is thrown, so
+** it only needs to unwind to the compiler
+*/
+public class CompileError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CompileError() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* serves compile requests from a single running compiler. Each request is one line naming a directory, optionally
+** followed by the same options as the command line, e.g.
+**
+**     examples/Pong --jobs 4 --incremental
+**     "examples/My Game" --optimise 2
+**
+** Words are separated by spaces, and a word in double quotes can contain spaces. --watch, --server and --port can't be
+** given in a request. Requests are compiled concurrently, and the answer to each is written as one block once it has
+** finished. Requests are numbered from 1 in the order they are read on each connection
+**
+**     response <request number> ok|failed
+**     message <line printed while compiling>
+**     output <path of a file written>
+**     end
+*/
+public class CompileServer {
+    private ExecutorService pool;
+    // locks of the directories requested, so that requests for the same directory are compiled one at a time
+    private Map<String, Object> directoryLocks = new ConcurrentHashMap<String, Object>();
+
+    public CompileServer(int threads) {
+        this.pool = Executors.newFixedThreadPool(threads);
+    }
+
+    // serves requests read from standard input, answering on standard output, until the input ends
+    public void serveStdin() {
+        PrintWriter responses = new PrintWriter(new OutputStreamWriter(System.out));
+        // anything else printed would be mixed into the answers, so it goes to standard error
+        System.setOut(System.err);
+        try {
+            serve(new BufferedReader(new InputStreamReader(System.in)), responses);
+        } catch (IOException e) {
+            System.err.println("error: could not read requests");
+        }
+        pool.shutdown();
+    }
+
+    // serves requests from connections to the given port of the loopback address, until the process is stopped
+    public void servePort(int port) {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("listening on port " + serverSocket.getLocalPort());
+            while (true) {
+                Socket socket = serverSocket.accept();
+                Thread connection = new Thread(() -> {
+                    try (socket) {
+                        serve(new BufferedReader(new InputStreamReader(socket.getInputStream())),
+                                new PrintWriter(new OutputStreamWriter(socket.getOutputStream())));
+                    } catch (IOException e) {
+                        System.out.println("error: connection lost");
+                    }
+                });
+                connection.start();
+            }
+        } catch (IOException e) {
+            System.out.println("error: could not listen on port " + port);
+        }
+    }
+
+    // reads requests until the input ends, compiling each on the pool, and returns once all have been answered
+    private void serve(BufferedReader requests, PrintWriter responses) throws IOException {
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+        String line;
+        int number = 0;
+        while ((line = requests.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int requestNumber = ++number;
+            String request = line.trim();
+            pending.removeIf(Future::isDone);
+            pending.add(pool.submit(() -> answer(requestNumber, request, responses)));
+        }
+        for (Future<?> f : pending) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                System.out.println("error: request could not be answered");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // splits a request into words separated by spaces, keeping the spaces within double quotes
+    private static String[] words(String request) {
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < request.length(); i++) {
+            char c = request.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                word.append(c);
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    // compiles the directory of a request and writes the answer
+    private void answer(int number, String request, PrintWriter responses) {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(messages, true);
+        List<File> outputs = null;
+        try {
+            Compiler compiler = Compiler.fromArgs(words(request), out);
+            if (compiler.watch || compiler.server || compiler.port != 0) {
+                out.println("Please don't give --watch, --server or --port in a request");
+            } else {
+                synchronized (lock(compiler.directory)) {
+                    outputs = compiler.compile(compiler.directory);
+                }
+            }
+        } catch (CompileError e) {
+            outputs = null;
+        } catch (RuntimeException e) {
+            // a failure in the compiler itself fails the request without stopping the server
+            e.printStackTrace(out);
+            outputs = null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("response ").append(number).append(outputs != null ? " ok" : " failed").append('\n');
+        for (String line : messages.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                sb.append("message ").append(line).append('\n');
+            }
+        }
+        if (outputs != null) {
+            for (File output : outputs) {
+                sb.append("output ").append(output.getPath()).append('\n');
+            }
+        }
+        sb.append("end\n");
+        synchronized (responses) {
+            responses.print(sb);
+            responses.flush();
+        }
+    }
+
+    // returns the lock of a directory, shared by all requests naming the same directory
+    private Object lock(String directory) {
+        String path;
+        try {
+            path = new File(directory).getCanonicalPath();
+        } catch (IOException e) {
+            path = new File(directory).getAbsolutePath();
+        }
+        return directoryLocks.computeIfAbsent(path, k -> new Object());
+    }
+}
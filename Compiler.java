@@ -1,18 +1,300 @@
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 // compiler class. Handles extracting files from directory and passing them to Lexer and Parser
 public class Compiler{
     Parser parser;
+    String directory;
+    // number of classes compiled at once
+    int jobs = 1;
+    // true if files unchanged since the last build are skipped
+    boolean incremental = false;
+    // true if the directory is compiled again whenever it changes
+    boolean watch = false;
+    // true if compile requests are served from standard input, and the port they are served on if not (0 if neither)
+    boolean server = false;
+    int port = 0;
+    // where messages are printed
+    PrintStream out = System.out;
+    // optimiser run on the vm code before it is written, or null if there is none
+    Peephole peephole = null;
+    // how far the vm code is optimised as it is generated, from 0 for not at all
+    int optimisation = 0;
+    // true if the program is written as a single Hack assembly file rather than a .vm file for each class
+    boolean assembly = false;
+    // true if the code of each class is written as bytecode rather than text
+    boolean binary = false;
+    /* how the program is linked to leave out functions that are never called: null if it isn't, "classes" to write each
+    ** class to its own file and "single" to write the whole program to one file
+    */
+    String link = null;
+    // longest function inlined at its calls, not counting its return, or 0 if none are
+    int inline = 0;
+    // true if the time spent in each pass of the compiler is printed once the program is compiled
+    boolean timing = false;
 
     public Compiler(String directory) {
         this.parser = new Parser(directory);
+        this.directory = directory;
     }
 
-    // runs the Parser. The parser runs the lexer
-    public void compile(String directory) {
-        parser.runParser(getFiles(directory));
+    /* creates a compiler from command line arguments, printing a message and throwing CompileError if they are wrong
+    ** usage: Compiler <directory> [--jobs N] [--incremental] [--watch] [--optimise LEVEL]
+    **                 [--peephole all|RULE,RULE...] [--target vm|asm]
+    **                 [--format text|binary] [--link classes|single]
+    **                 [--inline SIZE] [--timing]
+    **        Compiler --server | --port N
+    */
+    public static Compiler fromArgs(String[] args, PrintStream out) {
+        String directory = null;
+        int jobs = 1, port = 0, optimisation = 0, inline = 0;
+        boolean incremental = false, watch = false, server = false, assembly = false, binary = false, timing = false;
+        Peephole peephole = null;
+        String link = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].compareTo("--jobs") == 0) {
+                jobs = parseCount(args, ++i);
+                if (jobs < 1) {
+                    out.println("Please enter a number of jobs of at least 1");
+                    throw new CompileError();
+                }
+            } else if (args[i].compareTo("--incremental") == 0) {
+                incremental = true;
+            } else if (args[i].compareTo("--watch") == 0) {
+                watch = true;
+            } else if (args[i].compareTo("--optimise") == 0) {
+                optimisation = parseCount(args, ++i);
+                if (optimisation < 0 || optimisation > CodeGenerator.MAX_OPTIMISATION) {
+                    out.println("Please enter an optimisation level from 0 to " + CodeGenerator.MAX_OPTIMISATION);
+                    throw new CompileError();
+                }
+            } else if (args[i].compareTo("--peephole") == 0) {
+                peephole = ++i < args.length ? Peephole.fromNames(args[i]) : null;
+                if (peephole == null) {
+                    out.println("Please enter all or peephole rules separated by commas, from:");
+                    for (Peephole.Rule rule : Peephole.Rule.values()) {
+                        out.println("  " + rule.optionName());
+                    }
+                    throw new CompileError();
+                }
+            } else if (args[i].compareTo("--target") == 0) {
+                String target = ++i < args.length ? args[i] : "";
+                if (target.compareTo("vm") != 0 && target.compareTo("asm") != 0) {
+                    out.println("Please enter a target of vm or asm");
+                    throw new CompileError();
+                }
+                assembly = target.compareTo("asm") == 0;
+            } else if (args[i].compareTo("--format") == 0) {
+                String format = ++i < args.length ? args[i] : "";
+                if (format.compareTo("text") != 0 && format.compareTo("binary") != 0) {
+                    out.println("Please enter a format of text or binary");
+                    throw new CompileError();
+                }
+                binary = format.compareTo("binary") == 0;
+            } else if (args[i].compareTo("--link") == 0) {
+                link = ++i < args.length ? args[i] : "";
+                if (link.compareTo("classes") != 0 && link.compareTo("single") != 0) {
+                    out.println("Please enter a link output of classes or single");
+                    throw new CompileError();
+                }
+            } else if (args[i].compareTo("--inline") == 0) {
+                inline = parseCount(args, ++i);
+                if (inline < 1) {
+                    out.println("Please enter a largest size of function to inline of at least 1");
+                    throw new CompileError();
+                }
+            } else if (args[i].compareTo("--timing") == 0) {
+                timing = true;
+            } else if (args[i].compareTo("--server") == 0) {
+                server = true;
+            } else if (args[i].compareTo("--port") == 0) {
+                port = parseCount(args, ++i);
+                if (port < 1 || port > 65535) {
+                    out.println("Please enter a port between 1 and 65535");
+                    throw new CompileError();
+                }
+            } else if (args[i].startsWith("--")) {
+                out.println("Please enter an option from --jobs, --incremental, --watch, --optimise, --peephole, "
+                        + "--target, --format, --link, --inline, --timing, --server or --port, not " + args[i]);
+                throw new CompileError();
+            } else if (directory == null) {
+                directory = args[i];
+            } else {
+                out.println("Please enter a single directory, not both " + directory + " and " + args[i]);
+                throw new CompileError();
+            }
+        }
+        // the assembly file is written from every class of the program at once
+        if (assembly && (incremental || watch)) {
+            out.println("Please build assembly without --incremental or --watch");
+            throw new CompileError();
+        }
+        if ((link != null || inline > 0) && (incremental || watch)) {
+            out.println("Please link or inline without --incremental or --watch");
+            throw new CompileError();
+        }
+        if (assembly && binary) {
+            out.println("Please choose either --target asm or --format binary");
+            throw new CompileError();
+        }
+        // a server is given its directories in requests
+        if (directory == null && !server && port == 0) {
+            out.println("Please enter a single directory");
+            throw new CompileError();
+        }
+        Compiler compiler = new Compiler(directory);
+        compiler.jobs = jobs;
+        compiler.incremental = incremental;
+        compiler.watch = watch;
+        compiler.server = server;
+        compiler.port = port;
+        compiler.peephole = peephole;
+        compiler.parser.setPeephole(peephole);
+        compiler.optimisation = optimisation;
+        compiler.parser.setOptimisation(optimisation);
+        compiler.assembly = assembly;
+        compiler.binary = binary;
+        compiler.link = link;
+        compiler.inline = inline;
+        compiler.timing = timing;
+        compiler.parser.setBinary(binary);
+        compiler.setOut(out);
+        return compiler;
+    }
+
+    // returns the number given as argument i, or -1 if there isn't one
+    private static int parseCount(String[] args, int i) {
+        try {
+            return Integer.parseInt(args[i]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+        parser.setOut(out);
+    }
+
+    /* runs the Parser. The parser runs the lexer. Returns the .vm or bytecode files of the classes, or the file of the
+    ** whole program, or throws CompileError once the error stopping compilation has been printed
+    */
+    public List<File> compile(String directory) {
+        AsmWriter asmWriter = assembly ? new AsmWriter(programFile(directory, ".asm")) : null;
+        if (assembly) {
+            parser.setAsmWriter(asmWriter);
+        }
+        // inlining needs every class of the program, so the program is linked even if nothing is left out
+        if (link != null || inline > 0) {
+            boolean single = link != null && link.compareTo("single") == 0 && !assembly;
+            Linker linker = new Linker(
+                    single ? programFile(directory, binary ? VMBytecode.EXTENSION : ".vm") : null, asmWriter);
+            linker.setPrune(link != null);
+            linker.setInliner(inline > 0 ? new Inliner(inline) : null);
+            parser.setLinker(linker);
+        }
+        if (incremental) {
+            BuildCache cache = new BuildCache(directory, options());
+            cache.load();
+            parser.runParser(getFiles(directory), jobs, cache);
+        } else {
+            parser.runParser(getFiles(directory), jobs);
+        }
+        if (timing) {
+            out.println("timing: " + parser.getPassTimes());
+        }
+        return parser.getOutputFiles();
+    }
+
+    /* compiles the directory, then compiles it again each time a .jack file in it changes until the process is stopped.
+    ** Signatures of the classes are kept between builds, so only the files that changed and the classes depending on
+    ** them are compiled again
+    */
+    public void watch(String directory) {
+        BuildCache cache = new BuildCache(directory, options());
+        cache.load();
+        build(directory, cache);
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Paths.get(directory).register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // the .vm and cache files written by a build are ignored
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || event.context().toString().endsWith(".jack")) {
+                        changed = true;
+                    }
+                }
+                if (!key.reset()) {
+                    out.println("Directory can no longer be watched");
+                    return;
+                }
+                if (changed) {
+                    // editors can save a file in several steps, so wait for the changes to settle
+                    while ((key = watcher.poll(50, TimeUnit.MILLISECONDS)) != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                    build(directory, cache);
+                }
+            }
+        } catch (IOException e) {
+            out.println("error: could not watch directory");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // compiles the files that have changed since the build recorded in the cache and reports how long it took
+    private void build(String directory, BuildCache cache) {
+        long start = System.nanoTime();
+        try {
+            File[] files = getFiles(directory);
+            Parser parser = new Parser(directory);
+            parser.setOut(out);
+            parser.setPeephole(peephole);
+            parser.setOptimisation(optimisation);
+            parser.setBinary(binary);
+            int compiled = parser.runParser(files, jobs, cache);
+            out.println("compiled " + compiled + " of " + files.length + " classes in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (RuntimeException e) {
+            // a failure in the compiler itself is reported without stopping the watch
+            if (!(e instanceof CompileError)) {
+                e.printStackTrace(out);
+            }
+            // an unfinished build leaves .vm files that do not match the cache
+            cache.clear();
+            out.println("build failed in " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+
+    /* the options which change the code generated, so that a build with other options doesn't reuse cached classes.
+    ** The format is included as a build in one format leaves the files of the other as they were
+    */
+    private String options() {
+        return "optimise " + optimisation + " peephole " + (peephole == null ? "none" : peephole.toString())
+                + " format " + (binary ? "binary" : "text");
+    }
+
+    // the file of a whole program, named after its directory as a vm translator would name it
+    private static File programFile(String directory, String extension) {
+        Path name = Paths.get(directory).toAbsolutePath().normalize().getFileName();
+        return new File(directory, (name == null ? "Main" : name.toString()) + extension);
     }
 
     // returns all of the jack files from within the given directory
@@ -20,8 +302,8 @@ public class Compiler{
         File directory = new File(input);
         // make sure the directory exists and is not a file
         if(!directory.exists() || !directory.isDirectory()){
-            System.out.println("Please enter an existing directory");
-            System.exit(0);
+            out.println("Please enter an existing directory");
+            throw new CompileError();
         }
 
         // obtain list of files ending in '.jack'
@@ -33,8 +315,8 @@ public class Compiler{
 
         // make sure there are files to compile
         if (files.length == 0) {
-            System.out.println("Please enter a directory containing .jack files");
-            System.exit(0);
+            out.println("Please enter a directory containing .jack files");
+            throw new CompileError();
         }
 
 
@@ -42,11 +324,22 @@ public class Compiler{
     }
 
     public static void main( String[] args) {
-        if (args.length == 0) {
-            System.out.println("Please enter a single directory");
+        try {
+            Compiler compiler = fromArgs(args, System.out);
+            if (compiler.server || compiler.port != 0) {
+                CompileServer server = new CompileServer(Runtime.getRuntime().availableProcessors());
+                if (compiler.server) {
+                    server.serveStdin();
+                } else {
+                    server.servePort(compiler.port);
+                }
+            } else if (compiler.watch) {
+                compiler.watch(compiler.directory);
+            } else {
+                compiler.compile(compiler.directory);
+            }
+        } catch (CompileError e) {
             System.exit(0);
         }
-        Compiler compiler = new Compiler(args[0]);
-        compiler.compile(args[0]);
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* the checks on identifiers of other classes which can only be made once every class has been parsed. Variables and
+** subroutines are kept by class and name, so each is checked once however often it is referred to, along with every
+** type it was expected to have. Names and types are kept as their ids in Names. Everything is kept in the order it was
+** first added, which is the order its messages are printed in
+*/
+public class DeferredChecks {
+
+    // a variable or subroutine of a class
+    public record Member(int className, int name) {}
+
+    // the class and subroutine a reference was made from
+    public record Origin(int className, int subroutine) {}
+
+    // a type a member was expected to have where it was referred to
+    public record TypeUse(int type, Origin origin) {}
+
+    // a member referred to, where it was first referred to, and the types it was expected to have
+    public record MemberCheck(Member member, Origin firstReference, List<TypeUse> uses) {
+
+        // where the member is reported to be used from if it isn't found
+        public Origin reportedAt() {
+            return uses.isEmpty() ? firstReference : uses.get(0).origin();
+        }
+
+        // the member followed by each type it was expected to have and where, separated by commas
+        public String describe() {
+            StringBuilder sb = new StringBuilder(Names.name(member.className()) + ", " + Names.name(member.name()));
+            for (TypeUse use : uses) {
+                sb.append(", ").append(Names.name(use.type())).append(", ")
+                        .append(Names.name(use.origin().className())).append(", ")
+                        .append(Names.name(use.origin().subroutine()));
+            }
+            return sb.toString();
+        }
+    }
+
+    // a call to a subroutine, with the types of the arguments it was given
+    public record CallCheck(Member subroutine, Origin origin, int[] argumentTypes) {}
+
+    private Set<Integer> types = new LinkedHashSet<Integer>();
+    private Map<Member, MemberCheck> variables = new LinkedHashMap<Member, MemberCheck>();
+    private Map<Member, MemberCheck> subroutines = new LinkedHashMap<Member, MemberCheck>();
+    private List<CallCheck> calls = new ArrayList<CallCheck>();
+
+    // adds a type which must be the name of a class
+    public void addType(int type) {
+        types.add(type);
+    }
+
+    // adds a variable of another class, unless it is already to be checked
+    public void addVariable(Member member, Origin origin) {
+        variables.computeIfAbsent(member, m -> new MemberCheck(m, origin, new ArrayList<TypeUse>()));
+    }
+
+    // adds a subroutine of a class, unless it is already to be checked
+    public void addSubroutine(Member member, Origin origin) {
+        subroutines.computeIfAbsent(member, m -> new MemberCheck(m, origin, new ArrayList<TypeUse>()));
+    }
+
+    // adds a type a variable is expected to have, if the variable is to be checked
+    public void addVariableUse(Member member, TypeUse use) {
+        MemberCheck check = variables.get(member);
+        if (check != null) {
+            check.uses().add(use);
+        }
+    }
+
+    // adds a type a subroutine is expected to return, if the subroutine is to be checked
+    public void addSubroutineUse(Member member, TypeUse use) {
+        MemberCheck check = subroutines.get(member);
+        if (check != null) {
+            check.uses().add(use);
+        }
+    }
+
+    public void addCall(CallCheck call) {
+        calls.add(call);
+    }
+
+    /* adds the checks of a class parsed separately, as though they had been added after these. A member already to be
+    ** checked keeps its place, and has the types from the other checks added to its own
+    */
+    public void merge(DeferredChecks other) {
+        types.addAll(other.types);
+        mergeMembers(variables, other.variables);
+        mergeMembers(subroutines, other.subroutines);
+        calls.addAll(other.calls);
+    }
+
+    private static void mergeMembers(Map<Member, MemberCheck> members, Map<Member, MemberCheck> other) {
+        for (MemberCheck o : other.values()) {
+            MemberCheck existing = members.putIfAbsent(o.member(), o);
+            if (existing != null) {
+                existing.uses().addAll(o.uses());
+            }
+        }
+    }
+
+    public Set<Integer> getTypes() {
+        return types;
+    }
+
+    public Iterable<MemberCheck> getVariables() {
+        return variables.values();
+    }
+
+    public Iterable<MemberCheck> getSubroutines() {
+        return subroutines.values();
+    }
+
+    public List<CallCheck> getCalls() {
+        return calls;
+    }
+}
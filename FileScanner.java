@@ -3,22 +3,66 @@ import java.util.List;
 import java.util.Scanner;
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.IllegalArgumentException;
 import java.io.File;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 
 
 
 public class FileScanner {
+    // files larger than this are memory mapped rather than read into a byte array
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    // character classes for the ascii fast path
+    private static final byte PLAIN = 0, SPACE = 1, SYMBOL = 2, SLASH = 3, QUOTE = 4;
+    private static final byte[] charClass = new byte[128];
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c)) {
+                charClass[c] = SPACE;
+            } else if (Token.isSymbol(String.valueOf(c))) {
+                charClass[c] = SYMBOL;
+            }
+        }
+        charClass['/'] = SLASH;
+        charClass['\"'] = QUOTE;
+    }
+
     private File file;
     public Tokeniser tokeniser;
 
+    // state of the scan, kept between calls so that tokens can be created only as they are needed
+    private ByteBuffer buf = null;
+    private int pos = 0, lexStart = -1, slashAt = -1;
+    // used instead of buf once the file is being read character by character
+    private Reader reader = null;
+    private char c = '0', cPrev = '0';
+    private boolean isString = false;
+    // line and column of the last character read, and that character
+    private int line = 1, column = 0;
+    private int lastRead = 0;
+    private boolean finished = false;
+    // where messages are printed
+    private PrintStream out = System.out;
+
     public FileScanner(File file) {
         this.file = file;
         this.tokeniser = new Tokeniser();
     }
 
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
     // return true if string is being read, return false if string is no longer being read
     public boolean readingString(boolean isString) {
         if (isString == false) {
@@ -57,46 +101,239 @@ public class FileScanner {
         }
     }
 
-    // open file and read character by character
+    /* open file and scan its bytes directly. Comments, whitespace and identifiers are skipped over as ranges and
+    ** lexemes are handed to the tokeniser as offsets into the buffer. Files that are not plain ascii (or contain
+    ** input the fast path does not model) are decoded and read character by character instead
+    */
     public void readFile() {
+        open();
+        while (scan()) {
+            ;
+        }
+    }
+
+    // open file and read character by character
+    public void readFileByChar() {
+        try {
+            reader = new BufferedReader(new FileReader(file));
+        } catch (IOException e) {
+            out.println("ERROR: File not found: " + file);
+            finished = true;
+        }
+        while (scan()) {
+            ;
+        }
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+    // prepares the file for scanning. Tokens are only created once scan is called
+    public void open() {
+        try {
+            buf = readBytes();
+        } catch (IOException e) {
+            out.println("ERROR: File not found: " + file);
+            finished = true;
+        }
+    }
+
+    // creates tokens until at least one more has been made or the file has ended. Returns false once it has ended
+    public boolean scan() {
+        if (finished) {
+            return false;
+        }
+        if (reader == null && !scanBytes()) {
+            // start again using the character reader, which drops the tokens that have already been made
+            tokeniser.skipTokens(tokeniser.getCount());
+            byte[] bytes = new byte[buf.limit()];
+            buf.get(0, bytes);
+            reader = new StringReader(new String(bytes, Charset.defaultCharset()));
+        }
+        if (reader != null) {
+            scanChars();
+        }
+        return !finished;
+    }
+
+    // maps large files into memory, and reads small files in a single call
+    private ByteBuffer readBytes() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    }
+
+    /* walks the buffer from where the last scan stopped until a token has been created. Returns false without
+    ** finishing if a byte outside of ascii, or a quote directly after a '/', is met
+    */
+    private boolean scanBytes() {
+        int n = buf.limit();
+        int i = pos;
+        int lexStart = this.lexStart;
+        int slashAt = this.slashAt;
+        int created = tokeniser.getCount();
+
+        while (i < n && tokeniser.getCount() == created) {
+            int b = buf.get(i);
+            if (b < 0) {
+                return false;
+            }
+            if (slashAt >= 0) {
+                if (b == '\"') {
+                    return false;
+                }
+                // the lexeme before the '/' ends here whether or not a comment follows
+                lexStart = flushLexeme(lexStart, slashAt);
+                if (b == '/' || b == '*') { // skip all bytes until end of comment
+                    int end = skipComment(i, b == '/');
+                    // a comment closing after a '/' leaves that '/' waiting, as the character reader does
+                    slashAt = buf.get(end - 1) == '/' ? end - 1 : -1;
+                    i = end + 1;
+                    continue;
+                }
+                tokeniser.createToken(buf, slashAt, slashAt + 1);
+                slashAt = -1;
+            }
 
-            char c = '0', cPrev = '0';
-            int i;
-            boolean isString = false, singleLine = false;
-            try {
-                while ((i = br.read()) != -1) { // iterate through char by char
-                    c = (char) i;
-                    if (c == '\"') { // create token for string (between a pair of quotes)
-                        isString = this.readingString(isString);
+            switch (charClass[b]) {
+                case SPACE: // make new token if white space encountered
+                    lexStart = flushLexeme(lexStart, i);
+                    i++;
+                    while (i < n && (b = buf.get(i)) >= 0 && charClass[b] == SPACE) {
+                        i++;
                     }
-                    if (isCommentStart(cPrev, c) && !isString) { // skip all lines until end of comment
-                        // make a lexeme using chars before start of comment
-                        tokeniser.createLexeme(' ', ' ', isString);
-
-                        singleLine = isSingleLineComment(c);
-                        while (!isCommentEnd(cPrev, c, singleLine) && i != -1) {
-                            cPrev = c;
-                            i = br.read();
-                            c = (char) i;
-                        }
-                    } else {
-                        if (c == '\"' && !isString) {
-                            tokeniser.createLexeme(c, cPrev, true); // add character to lexeme
-                        } else {
-                            tokeniser.createLexeme(c, cPrev, isString); // add character to lexeme
+                    break;
+                case SYMBOL: // make special symbols into their own token
+                    lexStart = flushLexeme(lexStart, i);
+                    tokeniser.createToken(buf, i, i + 1);
+                    i++;
+                    break;
+                case SLASH: // decide what the '/' is once the next byte is known
+                    slashAt = i;
+                    i++;
+                    break;
+                case QUOTE: // the string, including both quotes, becomes part of the lexeme
+                    if (lexStart < 0) {
+                        lexStart = i;
+                    }
+                    i++;
+                    while (i < n && (b = buf.get(i)) != '\"') {
+                        if (b < 0) {
+                            return false;
                         }
+                        i++;
+                    }
+                    if (i == n) { // an unterminated string never becomes a token
+                        finished = true;
+                        return true;
+                    }
+                    i++;
+                    break;
+                default: // otherwise just add the run of characters to the lexeme
+                    if (lexStart < 0) {
+                        lexStart = i;
+                    }
+                    i++;
+                    while (i < n && (b = buf.get(i)) >= 0 && charClass[b] == PLAIN) {
+                        i++;
+                    }
+            }
+        }
+        if (i >= n) {
+            if (slashAt >= 0) {
+                lexStart = flushLexeme(lexStart, slashAt);
+                tokeniser.createToken(buf, slashAt, slashAt + 1);
+            }
+            flushLexeme(lexStart, n);
+            finished = true;
+        }
+        this.pos = i;
+        this.lexStart = lexStart;
+        this.slashAt = slashAt;
+        return true;
+    }
+
+    /* returns the index of the byte that ends the comment whose second character is at index start, or the buffer
+    ** length if the comment is never closed. Any comment is closed by a '*' followed by '/', single line comments
+    ** also by a new line
+    */
+    private int skipComment(int start, boolean singleLine) {
+        int n = buf.limit();
+        int prev = buf.get(start);
+        for (int i = start + 1; i < n; i++) {
+            int b = buf.get(i);
+            if ((b == '/' && prev == '*') || (singleLine && b == '\n')) {
+                return i;
+            }
+            prev = b;
+        }
+        return n;
+    }
+
+    // creates a token for the lexeme between start and end if there is one. Returns the new (empty) lexeme start
+    private int flushLexeme(int start, int end) {
+        if (start >= 0) {
+            tokeniser.createToken(buf, start, end);
+        }
+        return -1;
+    }
+
+    // read character by character until a token has been created, building lexemes one character at a time
+    private void scanChars() {
+        int i;
+        int created = tokeniser.getCount();
+        try {
+            while (tokeniser.getCount() == created) {
+                if ((i = read()) == -1) {
+                    tokeniser.createLexeme(' ', cPrev, isString); //create token using the last lexeme produced
+                    reader.close();
+                    finished = true;
+                    return;
+                }
+                c = (char) i;
+                if (c == '\"') { // create token for string (between a pair of quotes)
+                    isString = this.readingString(isString);
+                }
+                if (isCommentStart(cPrev, c) && !isString) { // skip all lines until end of comment
+                    // make a lexeme using chars before start of comment
+                    tokeniser.createLexeme(' ', ' ', isString);
+
+                    boolean singleLine = isSingleLineComment(c);
+                    while (!isCommentEnd(cPrev, c, singleLine) && i != -1) {
                         cPrev = c;
+                        i = read();
+                        c = (char) i;
+                    }
+                    if (cPrev == '/') { // the '/' before the end of the comment may still become a token
+                        tokeniser.setSlashPosition(line, column - 1);
+                    }
+                } else {
+                    tokeniser.setPosition(line, column);
+                    if (c == '\"' && !isString) {
+                        tokeniser.createLexeme(c, cPrev, true); // add character to lexeme
+                    } else {
+                        tokeniser.createLexeme(c, cPrev, isString); // add character to lexeme
                     }
+                    cPrev = c;
                 }
-                tokeniser.createLexeme(' ', cPrev, isString); //create token using the last lexeme produced
-                br.close();
-            } catch (IOException e) {
-                System.out.println("error");
             }
         } catch (IOException e) {
-            System.out.println("ERROR: File not found: " + file);
+            out.println("error");
+            finished = true;
+        }
+    }
+
+    // reads the next character, keeping track of its line and column
+    private int read() throws IOException {
+        int i = reader.read();
+        if (lastRead == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
         }
+        lastRead = i;
+        return i;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,175 @@
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* replaces calls to small functions with the code of the function, once every class of a program has been compiled.
+** The arguments are popped into locals added to the caller, and the locals of the function are moved to follow them.
+** A function is only inlined if it is no longer than the size given, ends with its only return and has no labels. A
+** function using statics is only inlined into its own class, as each class has its own static segment
+*/
+public class Inliner {
+    // approximate number of Hack instructions a vm translator writes for a call, a return and each local of a function
+    private static final int CALL_CYCLES = 46, RETURN_CYCLES = 41, LOCAL_CYCLES = 5;
+    // longest function inlined, not counting its return
+    private int maxSize;
+
+    public Inliner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    // inlines calls to small functions in every function of the program, reporting what was inlined and what wasn't
+    public void inline(List<VMFile> classes, PrintStream out) {
+        Map<String, VMCode> functions = new HashMap<String, VMCode>();
+        Map<VMCode, VMFile> files = new HashMap<VMCode, VMFile>();
+        for (VMFile vmFile : classes) {
+            for (VMCode code : vmFile.getFunctions()) {
+                functions.put(vmFile.name(code.getName()), code);
+                files.put(code, vmFile);
+            }
+        }
+
+        for (VMFile vmFile : classes) {
+            for (VMCode caller : vmFile.getFunctions()) {
+                VMCode inlined = new VMCode();
+                // the locals used by inlined functions follow the caller's own, and are shared between call sites
+                int base = caller.getLocals(), extraLocals = 0;
+                boolean changed = false;
+                for (int i = 0; i < caller.size(); i++) {
+                    VMCode callee = null;
+                    if (caller.op(i) == VMCode.Opcode.CALL) {
+                        callee = functions.get(vmFile.name(caller.arg(i)));
+                    }
+                    if (callee == null || callee == caller || callee.size() - 1 > maxSize) {
+                        inlined.add(caller.op(i), caller.arg(i), caller.value(i));
+                        continue;
+                    }
+                    String names = vmFile.name(caller.arg(i)) + " into " + vmFile.name(caller.getName());
+                    String reason = reasonNotInlined(callee, files.get(callee) == vmFile);
+                    if (reason != null) {
+                        out.println("inline: " + names + " not done, as " + reason);
+                        inlined.add(caller.op(i), caller.arg(i), caller.value(i));
+                        continue;
+                    }
+                    int saving = inlineCall(inlined, vmFile, callee, files.get(callee), caller.value(i), base);
+                    extraLocals = Math.max(extraLocals, localsNeeded(callee, caller.value(i)));
+                    changed = true;
+                    out.println("inline: " + names + ", saving about " + saving + " cycles per call");
+                }
+                if (changed) {
+                    caller.replaceCode(inlined);
+                    caller.declare(caller.getName(), base + extraLocals);
+                }
+            }
+        }
+    }
+
+    // returns why a function can't be inlined, or null if it can
+    private String reasonNotInlined(VMCode callee, boolean sameClass) {
+        if (callee.size() == 0 || callee.op(callee.size() - 1) != VMCode.Opcode.RETURN) {
+            return "it doesn't end with a return";
+        }
+        for (int i = 0; i < callee.size(); i++) {
+            VMCode.Opcode op = callee.op(i);
+            if (op == VMCode.Opcode.LABEL || op == VMCode.Opcode.GOTO || op == VMCode.Opcode.IF_GOTO
+                    || (op == VMCode.Opcode.RETURN && i < callee.size() - 1)) {
+                return "it has more than one path through it";
+            }
+            boolean access = op == VMCode.Opcode.PUSH || op == VMCode.Opcode.POP;
+            if (access && callee.arg(i) == VMCode.Segment.STATIC.ordinal() && !sameClass) {
+                return "it uses the statics of its class";
+            }
+            if (access && callee.arg(i) == VMCode.Segment.FIELD.ordinal()) {
+                return "it uses a variable of another class";
+            }
+        }
+        return null;
+    }
+
+    /* adds the code of a function called with the given number of arguments to the code of the caller. The arguments
+    ** and locals of the function are moved to the caller's locals from base, followed by a local keeping this and one
+    ** keeping that if the function changes them. Returns the number of cycles saved each time the call is made
+    */
+    private int inlineCall(VMCode code, VMFile file, VMCode callee, VMFile calleeFile, int arguments, int base) {
+        int locals = base + arguments, pointerLocal = locals + callee.getLocals();
+        int start = code.size();
+
+        for (int i = arguments - 1; i >= 0; i--) {
+            code.add(VMCode.Opcode.POP, VMCode.Segment.LOCAL.ordinal(), base + i);
+        }
+        // locals start at 0 each time the function is called
+        for (int i = 0; i < callee.getLocals(); i++) {
+            code.add(VMCode.Opcode.PUSH, VMCode.Segment.CONSTANT.ordinal(), 0);
+            code.add(VMCode.Opcode.POP, VMCode.Segment.LOCAL.ordinal(), locals + i);
+        }
+        for (int pointer = 0, local = pointerLocal; pointer <= 1; pointer++) {
+            if (setsPointer(callee, pointer)) {
+                code.add(VMCode.Opcode.PUSH, VMCode.Segment.POINTER.ordinal(), pointer);
+                code.add(VMCode.Opcode.POP, VMCode.Segment.LOCAL.ordinal(), local++);
+            }
+        }
+        for (int i = 0; i < callee.size() - 1; i++) {
+            VMCode.Opcode op = callee.op(i);
+            int arg = callee.arg(i), value = callee.value(i);
+            if (op == VMCode.Opcode.CALL) {
+                arg = file.nameIndex(calleeFile.name(arg));
+            } else if (arg == VMCode.Segment.ARGUMENT.ordinal()) {
+                arg = VMCode.Segment.LOCAL.ordinal();
+                value += base;
+            } else if (arg == VMCode.Segment.LOCAL.ordinal()) {
+                value += locals;
+            }
+            code.add(op, arg, value);
+        }
+        for (int pointer = 0, local = pointerLocal; pointer <= 1; pointer++) {
+            if (setsPointer(callee, pointer)) {
+                code.add(VMCode.Opcode.PUSH, VMCode.Segment.LOCAL.ordinal(), local++);
+                code.add(VMCode.Opcode.POP, VMCode.Segment.POINTER.ordinal(), pointer);
+            }
+        }
+
+        int added = 0;
+        for (int i = start; i < code.size(); i++) {
+            added += cycles(code, i);
+        }
+        for (int i = 0; i < callee.size() - 1; i++) {
+            added -= cycles(callee, i);
+        }
+        return CALL_CYCLES + RETURN_CYCLES + LOCAL_CYCLES * callee.getLocals() - added;
+    }
+
+    // number of locals the caller needs for the code of a function called with the given number of arguments
+    private static int localsNeeded(VMCode callee, int arguments) {
+        int locals = arguments + callee.getLocals();
+        for (int pointer = 0; pointer <= 1; pointer++) {
+            if (setsPointer(callee, pointer)) {
+                locals++;
+            }
+        }
+        return locals;
+    }
+
+    // returns true if a function pops a value into pointer 0 or 1
+    private static boolean setsPointer(VMCode code, int pointer) {
+        for (int i = 0; i < code.size(); i++) {
+            if (code.op(i) == VMCode.Opcode.POP && code.arg(i) == VMCode.Segment.POINTER.ordinal()
+                    && code.value(i) == pointer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // approximate number of Hack instructions a vm translator writes for instruction i
+    private static int cycles(VMCode code, int i) {
+        VMCode.Opcode op = code.op(i);
+        if (op != VMCode.Opcode.PUSH && op != VMCode.Opcode.POP) {
+            return op == VMCode.Opcode.CALL ? CALL_CYCLES : 5;
+        }
+        switch (VMCode.Segment.values()[code.arg(i)]) {
+            case CONSTANT: return 7;
+            case STATIC: case TEMP: case POINTER: return op == VMCode.Opcode.PUSH ? 6 : 5;
+            default: return op == VMCode.Opcode.PUSH ? 10 : 12;
+        }
+    }
+}
@@ -7,47 +7,76 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.IllegalArgumentException;
 import java.io.File;
+import java.io.PrintStream;
 
 
 
 public class Lexer {
-  // List of tokens
-  public List<Token> tokens;
+  // tokens of the file when it has been read beforehand. Null when tokens are being streamed
+  private TokenBuffer tokenBuffer;
+  // cursor over the tokens of the file
+  private TokenStream stream;
+  // where the scanner prints its messages
+  private PrintStream out = System.out;
   public Lexer() {}
-  // return list of all tokens for the file
-  public List<Token> getTokens () { return tokens; }
+  // return list of all tokens for the file, or null if they are being streamed
+  public List<Token> getTokens () {
+    if (tokenBuffer == null) {
+      return null;
+    }
+    List<Token> tokens = new ArrayList<Token>(tokenBuffer.size());
+    for (int i = 0; i < tokenBuffer.size(); i++) {
+      tokens.add(tokenBuffer.token(i));
+    }
+    return tokens;
+  }
+  // return the compact buffer of all tokens for the file, or null if they are being streamed
+  public TokenBuffer getTokenBuffer () { return tokenBuffer; }
 
 
   // methods
 
-  // removes token from token list at specified index i
-  public void removeToken(int i){
-    tokens.remove(i);
+  public void setOut(PrintStream out) {
+    this.out = out;
   }
 
   public void extractTokens(File file) {
-    // first reset all lists, then read file
-    tokens = new ArrayList<Token>();
+    // read the whole file into a compact token buffer
     FileScanner fs = new FileScanner( file );
+    fs.setOut(out);
     fs.readFile();
-    this.tokens = fs.tokeniser.getTokens();
+    this.tokenBuffer = fs.tokeniser.getTokenBuffer();
+    this.stream = new TokenStream(tokenBuffer);
   }
 
+  // prepares the file so that its tokens are only created as they are consumed or peeked at
+  public void streamTokens(File file) {
+    tokenBuffer = null;
+    FileScanner fs = new FileScanner( file );
+    fs.setOut(out);
+    fs.open();
+    this.stream = new TokenStream(fs);
+  }
 
+
+  // consumes the next token. Returns Token.EOF once the file has been read
   public Token GetNextToken(){
-    if(tokens.size() == 0) {
-      return null;
-    }
-    Token token = tokens.get(0);
-    this.removeToken(0);
-    return token;
+    return stream.next();
   }
+  // returns the next token without consuming it
   public Token PeekNextToken(){
-    if(tokens.size() <= 1) {
-      return null;
-    }
-    Token token = tokens.get(0);
-
-    return token;
+    return stream.peek(1);
+  }
+  // returns the k'th token after the current one without consuming anything
+  public Token PeekToken(int k){
+    return stream.peek(k);
+  }
+  // returns the line of the token last consumed
+  public int getLine(){
+    return stream.getLine();
+  }
+  // returns the column of the token last consumed
+  public int getColumn(){
+    return stream.getColumn();
   }
 }
@@ -0,0 +1,153 @@
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* links the classes of a program once they have all been compiled. Small functions are inlined if there is an inliner,
+** then every function that can't be reached by calls from Main.main, or from Sys.init if the program has one, is left
+** out if the program is pruned. The rest are written to the file of each class, to a single file for the whole
+** program, or to the assembly program if there is one
+*/
+public class Linker {
+    // file the whole program is written to, or null if each class is written to its own file
+    private File combinedFile;
+    private AsmWriter asmWriter;
+    // true if functions that can't be reached are left out
+    private boolean prune = true;
+    private Inliner inliner = null;
+    private List<VMFile> classes = new ArrayList<VMFile>();
+
+    public Linker(File combinedFile, AsmWriter asmWriter) {
+        this.combinedFile = combinedFile;
+        this.asmWriter = asmWriter;
+    }
+
+    public void setPrune(boolean prune) {
+        this.prune = prune;
+    }
+
+    public void setInliner(Inliner inliner) {
+        this.inliner = inliner;
+    }
+
+    public File getCombinedFile() {
+        return combinedFile;
+    }
+
+    // adds the code of a class to the program
+    public synchronized void add(VMFile vmFile) {
+        classes.add(vmFile);
+    }
+
+    /* inlines small functions, removes the functions that can't be reached and writes what is left, reporting what was
+    ** done. Prints a message and throws CompileError if the program has nowhere to start
+    */
+    public void link(PrintStream out) {
+        if (inliner != null) {
+            inliner.inline(classes, out);
+        }
+        if (prune) {
+            prune(out);
+        }
+
+        if (asmWriter != null) {
+            for (VMFile vmFile : classes) {
+                asmWriter.add(vmFile);
+            }
+            asmWriter.write(out);
+        } else if (combinedFile != null) {
+            combine().writeFile(out);
+        } else {
+            for (VMFile vmFile : classes) {
+                vmFile.writeFile(out);
+            }
+        }
+    }
+
+    // removes the functions that can't be reached from the start of the program, reporting how much was removed
+    private void prune(PrintStream out) {
+        Map<String, VMCode> functions = new HashMap<String, VMCode>();
+        Map<VMCode, VMFile> files = new HashMap<VMCode, VMFile>();
+        for (VMFile vmFile : classes) {
+            for (VMCode code : vmFile.getFunctions()) {
+                functions.put(vmFile.name(code.getName()), code);
+                files.put(code, vmFile);
+            }
+        }
+
+        Set<VMCode> reached = new HashSet<VMCode>();
+        Deque<VMCode> toVisit = new ArrayDeque<VMCode>();
+        for (String entry : new String[] {"Sys.init", "Main.main"}) {
+            if (functions.containsKey(entry) && reached.add(functions.get(entry))) {
+                toVisit.add(functions.get(entry));
+            }
+        }
+        if (toVisit.isEmpty()) {
+            out.println("error: the program needs a Sys.init or Main.main function to start from");
+            throw new CompileError();
+        }
+        while (!toVisit.isEmpty()) {
+            VMCode code = toVisit.remove();
+            for (int i = 0; i < code.size(); i++) {
+                if (code.op(i) == VMCode.Opcode.CALL) {
+                    // functions of classes which aren't part of the program, such as the OS, are left to be found later
+                    VMCode callee = functions.get(files.get(code).name(code.arg(i)));
+                    if (callee != null && reached.add(callee)) {
+                        toVisit.add(callee);
+                    }
+                }
+            }
+        }
+
+        int removedFunctions = 0, removedInstructions = 0, instructions = 0;
+        for (VMCode code : functions.values()) {
+            instructions += code.size();
+            if (!reached.contains(code)) {
+                removedFunctions++;
+                removedInstructions += code.size();
+            }
+        }
+        for (VMFile vmFile : classes) {
+            vmFile.getFunctions().retainAll(reached);
+        }
+        out.println("link: removed " + removedFunctions + " of " + functions.size() + " functions, "
+                + removedInstructions + " of " + instructions + " instructions");
+    }
+
+    /* returns the code of every class as a single file. A file has one static segment, so the statics of each class
+    ** are moved to follow those of the classes before it
+    */
+    private VMFile combine() {
+        VMFile combined = new VMFile(combinedFile);
+        combined.setBinary(classes.get(0).isBinary());
+        int staticBase = 0;
+        for (VMFile vmFile : classes) {
+            int statics = 0;
+            for (VMCode code : vmFile.getFunctions()) {
+                VMCode copy = new VMCode();
+                copy.declare(combined.nameIndex(vmFile.name(code.getName())), code.getLocals());
+                for (int i = 0; i < code.size(); i++) {
+                    VMCode.Opcode op = code.op(i);
+                    int arg = code.arg(i), value = code.value(i);
+                    if (op == VMCode.Opcode.CALL) {
+                        arg = combined.nameIndex(vmFile.name(arg));
+                    } else if ((op == VMCode.Opcode.PUSH || op == VMCode.Opcode.POP)
+                            && arg == VMCode.Segment.STATIC.ordinal()) {
+                        statics = Math.max(statics, value + 1);
+                        value += staticBase;
+                    }
+                    copy.add(op, arg, value);
+                }
+                combined.add(copy);
+            }
+            staticBase += statics;
+        }
+        return combined;
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/* the names of the program, shared by the whole compiler. Each distinct identifier is given a dense int id as it is
+** lexed, so symbols, types and the checks left until every class is parsed hold and compare ints, and each name is
+** kept as a single string. Keywords and symbols have their kind code as their id, so the built in types do too.
+** Ids are handed out to every thread, while holding the lock, and stay the same for as long as the compiler runs.
+** Names are never removed, so a --server or --watch process keeps every distinct name of every project it has
+** compiled. That is a few bytes for each name, which grows with the number of different names rather than with the
+** number of builds, as a name compiled again keeps its id
+*/
+public class Names {
+    // open addressing hash table of the ids of names given as characters, holding id + 1 and 0 if empty
+    private static int[] slots = new int[1024];
+    // names by id, replaced by a larger array as names are added
+    private static volatile String[] names = new String[512];
+    private static int size = 0;
+    // ids of names given as strings, which can be read without the lock
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    static {
+        for (String keyword : Token.KEYWORDS) {
+            id(keyword);
+        }
+        for (String symbol : Token.SYMBOLS) {
+            id(symbol);
+        }
+    }
+
+    // ids of the built in class names, and of the type given to the value of a call to a subroutine of another class
+    public static final int ARRAY = id("Array"), STRING = id("String"), UNKNOWN_TYPE = id("-2");
+
+    // returns the id of the name between start and start + length of buf, giving it one if it hasn't got one
+    public static synchronized int id(char[] buf, int start, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + buf[start + i];
+        }
+        int mask = slots.length - 1;
+        for (int slot = spread(h) & mask; ; slot = (slot + 1) & mask) {
+            if (slots[slot] == 0) {
+                return add(new String(buf, start, length), slot);
+            }
+            String name = names[slots[slot] - 1];
+            if (name.length() == length && matches(name, buf, start)) {
+                return slots[slot] - 1;
+            }
+        }
+    }
+
+    // returns the id of a name, giving it one if it hasn't got one. Returns Token.NONE for null
+    public static int id(String name) {
+        if (name == null) {
+            return Token.NONE;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        return id(name.toCharArray(), 0, name.length());
+    }
+
+    // returns the name of an id, or null for Token.NONE
+    public static String name(int id) {
+        return id == Token.NONE ? null : names[id];
+    }
+
+    // returns the names of a list of ids
+    public static String[] names(int[] ids) {
+        String[] names = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            names[i] = name(ids[i]);
+        }
+        return names;
+    }
+
+    private static int add(String name, int slot) {
+        int id = size++;
+        if (id == names.length) {
+            String[] larger = new String[names.length * 2];
+            System.arraycopy(names, 0, larger, 0, id);
+            names = larger;
+        }
+        names[id] = name;
+        slots[slot] = id + 1;
+        ids.put(name, id);
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        return id;
+    }
+
+    // doubles the number of slots, putting each id back in its new slot
+    private static void grow() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(names[id].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String name, char[] buf, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,19 +1,35 @@
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-/* checks grammar of language
+/* checks grammar of language, building the syntax tree of each class
  ** terminals are consumed when encountered
+ ** each class is parsed, then analysed and then has its code generated, by passes over its syntax tree
  */
 public class Parser {
 
     Lexer lexer;
     CodeGenerator codeGenerator;
     SemanticAnalyser semanticAnalyser;
+    SemanticPass semanticPass;
+    CodeGenPass codeGenPass;
     Token currentToken = null, peekToken = null;
     // lexemes for peek token and currentToken
     String currentTLexeme = null, peekTLexeme = null, directory = null;
     Token.TokenType currentTType = null, peekTType = null;
+    // tree of the class being parsed and the index of the current token in it
+    SyntaxTree tree = null;
+    int current = -1;
+    // class and subroutine being parsed, for error messages, or null before their names are read
+    String className = null, subroutineName = null;
     // List of strings encountered at start of expression
     List<String> isExprStrings = List.of("-", "~", "(","true", "false", "null", "this");
     List<String> isStmtStrings = List.of("var", "let", "if", "while", "do", "return");
@@ -21,73 +37,364 @@ public class Parser {
     List<String> isSubroutineDeclarStrings = List.of("constructor", "function", "method");
     List<String> isTypeStrings = List.of("int", "char", "boolean");
 
-    /* To improve level of abstraction and number of calls to the semantic analyser, the declaration of function and
-    ** class symbols
-    ** symbolStrings[0] = kind, [1] = type, [2] = name
-    */
-    String[] symbolStrings = new String[3];
-    // list for parameter types of a subroutine
-    List<String> paramTypesList = null;
-    // list of arguments from subroutine call to be checked against its paramTypesList later
-    // {class, name, origin class, origin subroutine ,param1, param2,...}
-    List<List<String>> expListList = new ArrayList<List<String>>();
-    List<String> expList = null;
+    // passes of the compiler, which are timed separately
+    public enum Pass {PARSE, ANALYSE, GENERATE, CHECK, LINK}
+    // nanoseconds spent in each pass so far, summed over every thread
+    private long[] passTimes = new long[Pass.values().length];
+    // where error and warning messages are printed
+    PrintStream out = System.out;
+    // names of the classes added to the semantic analyser so far, in the order they were added
+    private List<String> classNames = new ArrayList<String>();
 
     public Parser(String directory){
         this.lexer = new Lexer();
         this.codeGenerator = new CodeGenerator();
         this.semanticAnalyser = new SemanticAnalyser();
+        this.semanticPass = new SemanticPass(semanticAnalyser);
+        this.codeGenPass = new CodeGenPass(codeGenerator, directory);
         this.directory = directory;
     }
 
     public void runLexer(File file){
-        // first get a list of the files from
-        lexer.extractTokens(file);
+        // tokens are pulled from the file as the parser needs them
+        lexer.streamTokens(file);
     }
 
     public void runParser(File[] files) {
-        for (int i=0; i < files.length ; i++) {
+        runParser(files, 1);
+    }
+
+    public void runParser(File[] files, int jobs) {
+        compileClasses(files, jobs);
+
+        solveCheckLists(jobs);
+        long start = System.nanoTime();
+        if (codeGenerator.getLinker() != null) {
+            codeGenerator.getLinker().link(out);
+        } else if (codeGenerator.getAsmWriter() != null) {
+            codeGenerator.getAsmWriter().write(out);
+        }
+        passTimes[Pass.LINK.ordinal()] += System.nanoTime() - start;
+    }
+
+    /* compiles only the files that have changed since the build recorded in the cache, and the classes that refer to a
+    ** class whose signature has changed or which no longer exists. The classes of the files skipped are taken from the
+    ** cache, which is updated once the build has succeeded. Returns the number of files compiled
+    */
+    public int runParser(File[] files, int jobs, BuildCache cache) {
+        Map<String, String> hashes = new HashMap<String, String>();
+        for (File file : files) {
+            hashes.put(file.getName(), BuildCache.hash(file));
+        }
+
+        // classes which are not what they were at the last build
+        Set<String> changedClasses = new HashSet<String>();
+        for (Map.Entry<String, BuildCache.Entry> e : cache.getEntries().entrySet()) {
+            if (!hashes.containsKey(e.getKey())) {
+                changedClasses.add(e.getValue().className);
+            }
+        }
+        cache.retain(hashes.keySet());
+
+        Set<File> compiled = new HashSet<File>();
+        List<File> toCompile = outOfDate(files, hashes, cache, compiled, changedClasses);
+        if (!toCompile.isEmpty()) {
+            cache.delete();
+        }
+        while (!toCompile.isEmpty()) {
+            List<String> classNames = compileClasses(toCompile.toArray(new File[0]), jobs);
+            for (int i = 0; i < toCompile.size(); i++) {
+                File file = toCompile.get(i);
+                BuildCache.Entry entry = new BuildCache.Entry();
+                entry.hash = hashes.get(file.getName());
+                entry.className = classNames.get(i);
+                entry.dependencies.addAll(semanticAnalyser.getDependencies(entry.className));
+                entry.signature = BuildCache.signature(semanticAnalyser.getClassTable(entry.className));
+
+                BuildCache.Entry old = cache.get(file.getName());
+                if (old == null || old.className.compareTo(entry.className) != 0
+                        || !old.signature.equals(entry.signature)) {
+                    changedClasses.add(entry.className);
+                    if (old != null) {
+                        changedClasses.add(old.className);
+                    }
+                }
+                cache.put(file.getName(), entry);
+                compiled.add(file);
+            }
+            toCompile = outOfDate(files, hashes, cache, compiled, changedClasses);
+        }
+
+        if (!compiled.isEmpty()) {
+            for (File file : files) {
+                if (!compiled.contains(file)) {
+                    BuildCache.Entry entry = cache.get(file.getName());
+                    semanticAnalyser.addClass(entry.className, BuildCache.classTable(entry.signature));
+                    this.classNames.add(entry.className);
+                }
+            }
+            solveCheckLists(jobs);
+        }
+        cache.save(out);
+        return compiled.size();
+    }
+
+    // returns the files not yet compiled which have changed, have lost their output file or refer to a changed class
+    private List<File> outOfDate(File[] files, Map<String, String> hashes, BuildCache cache, Set<File> compiled,
+                                 Set<String> changedClasses) {
+        List<File> outOfDate = new ArrayList<File>();
+        for (File file : files) {
+            if (compiled.contains(file)) {
+                continue;
+            }
+            BuildCache.Entry entry = cache.get(file.getName());
+            if (entry == null || entry.hash.compareTo(hashes.get(file.getName())) != 0
+                    || !new File(directory, entry.className + outputExtension()).exists()) {
+                outOfDate.add(file);
+                continue;
+            }
+            for (String dependency : entry.dependencies) {
+                if (changedClasses.contains(dependency)) {
+                    outOfDate.add(file);
+                    break;
+                }
+            }
+        }
+        return outOfDate;
+    }
 
-            if (i > 0) {
-                semanticAnalyser.newClassSymbolTableList();
+    /* compiles the files, carrying on from any classes compiled before them, and returns the names of their classes.
+    ** The checks that need all classes to have been parsed are left to be solved
+    */
+    public List<String> compileClasses(File[] files, int jobs) {
+        List<String> names = new ArrayList<String>();
+        if (jobs <= 1 || files.length <= 1) {
+            for (File file : files) {
+                names.add(compileNextClass(file));
             }
+            return names;
+        }
+        return compileClassesInParallel(files, jobs);
+    }
 
-            runLexer(files[i]);
+    /* compiles the files on up to jobs threads at once, giving each class its own parser. Messages and vm code from
+    ** each class are held back and written out in file order, and the checks left until all classes are parsed are
+    ** merged in file order, so the output is the same as when the files are compiled one after another
+    */
+    private List<String> compileClassesInParallel(File[] files, int jobs) {
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        List<String> names = new ArrayList<String>();
+        List<Parser> parsers = new ArrayList<Parser>();
+        List<ByteArrayOutputStream> outputs = new ArrayList<ByteArrayOutputStream>();
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<ForkJoinTask<Boolean>>();
+        try {
+            for (File file : files) {
+                Parser parser = new Parser(directory);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                parser.setOut(new PrintStream(output, true));
+                parser.codeGenerator.holdVMFile();
+                parser.setPeephole(codeGenerator.getPeephole());
+                parser.setOptimisation(codeGenerator.getOptimisation());
+                parser.setAsmWriter(codeGenerator.getAsmWriter());
+                parser.setBinary(codeGenerator.isBinary());
+                parser.setLinker(codeGenerator.getLinker());
+                parsers.add(parser);
+                outputs.add(output);
+                // returns false if an error, or a failure in the parser itself, stopped the class from being compiled
+                tasks.add(pool.submit(() -> {
+                    try {
+                        parser.compileClass(file);
+                        return true;
+                    } catch (RuntimeException e) {
+                        return false;
+                    }
+                }));
+            }
 
-            jackClass();
-            codeGenerator.reset();
-            codeGenerator.closeVMFile();
+            for (int i = 0; i < files.length; i++) {
+                boolean compiled = tasks.get(i).join();
+                SemanticAnalyser analyser = parsers.get(i).semanticAnalyser;
+                /* a class with errors, or one following a class that left state set, is compiled again carrying on
+                ** from the classes before it, as its messages can depend on them
+                */
+                if (!compiled || semanticAnalyser.carriesState()) {
+                    names.add(compileNextClass(files[i]));
+                    continue;
+                }
+                for (int p = 0; p < passTimes.length; p++) {
+                    passTimes[p] += parsers.get(i).passTimes[p];
+                }
+                // the class is added before its messages are printed, as a repeated class name is found straight away
+                if (classNames.isEmpty()) {
+                    semanticAnalyser = analyser;
+                    semanticAnalyser.setOut(out);
+                    semanticPass.setAnalyser(analyser);
+                } else {
+                    semanticAnalyser.mergeClass(analyser);
+                }
+                classNames.add(analyser.getCurrentClass());
+                names.add(analyser.getCurrentClass());
+                out.write(outputs.get(i).toByteArray(), 0, outputs.get(i).size());
+                parsers.get(i).codeGenerator.setOut(out);
+                parsers.get(i).codeGenerator.writeHeldFile();
+            }
+        } finally {
+            // once an error stops the loop, the work not yet started on is dropped rather than done for nothing
+            tasks.forEach(task -> task.cancel(false));
+            pool.shutdown();
+        }
+        return names;
+    }
+
+    // compiles a class carrying on from the classes compiled before it, and returns its name
+    private String compileNextClass(File file) {
+        if (!classNames.isEmpty()) {
+            semanticAnalyser.newClassSymbolTableList();
         }
+        compileClass(file);
+        classNames.add(semanticAnalyser.getCurrentClass());
+        return semanticAnalyser.getCurrentClass();
+    }
 
-        // run final stage of analysis now that all classes have been parsed
-        semanticAnalyser.solveTypeCheckList();
-        semanticAnalyser.solveVarCheckList();
-        semanticAnalyser.solveSubrCheckList();
-        semanticAnalyser.solveParamCheckList();
+    /* lexes and parses a single class file, then analyses the class and generates its code. Analysis only starts once
+    ** the whole class has been parsed, so an error in its syntax is reported before any message from analysing it
+    */
+    public void compileClass(File file) {
+        long start = System.nanoTime();
+        runLexer(file);
+        SyntaxTree classTree = jackClass();
+        long parsed = System.nanoTime();
+        passTimes[Pass.PARSE.ordinal()] += parsed - start;
+
+        semanticPass.analyse(classTree);
+        long analysed = System.nanoTime();
+        passTimes[Pass.ANALYSE.ordinal()] += analysed - parsed;
+
+        codeGenPass.generate(classTree);
+        passTimes[Pass.GENERATE.ordinal()] += System.nanoTime() - analysed;
+        tree = null;
+    }
+
+    // run final stage of analysis now that all classes have been parsed
+    private void solveCheckLists(int jobs) {
+        long start = System.nanoTime();
+        semanticAnalyser.solveCheckLists(jobs);
         semanticAnalyser.resolveObjectVarRefList();
+        passTimes[Pass.CHECK.ordinal()] += System.nanoTime() - start;
+    }
+
+    // returns the time spent in each pass so far, in milliseconds
+    public String getPassTimes() {
+        StringBuilder sb = new StringBuilder();
+        for (Pass pass : Pass.values()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(pass.name().toLowerCase()).append(' ').append(passTimes[pass.ordinal()] / 1000000).append(" ms");
+        }
+        return sb.toString();
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+        lexer.setOut(out);
+        semanticAnalyser.setOut(out);
+        semanticPass.setOut(out);
+        codeGenerator.setOut(out);
+        codeGenPass.setOut(out);
+    }
+
+    // sets the optimiser run on the vm code of each class, or null for none
+    public void setPeephole(Peephole peephole) {
+        codeGenerator.setPeephole(peephole);
+    }
+
+    // sets how far the vm code is optimised as it is generated
+    public void setOptimisation(int optimisation) {
+        codeGenerator.setOptimisation(optimisation);
+    }
+
+    // sets the program the code of each class is added to, so that assembly is written rather than .vm files
+    public void setAsmWriter(AsmWriter asmWriter) {
+        codeGenerator.setAsmWriter(asmWriter);
+    }
+
+    // sets the program the code of each class is added to, so that it is linked before being written
+    public void setLinker(Linker linker) {
+        codeGenerator.setLinker(linker);
+    }
+
+    // sets whether the code of each class is written as bytecode rather than text
+    public void setBinary(boolean binary) {
+        codeGenerator.setBinary(binary);
+    }
+
+    // extension of the file the code of each class is written to
+    private String outputExtension() {
+        return codeGenerator.isBinary() ? VMBytecode.EXTENSION : ".vm";
+    }
+
+    /* returns the .vm or bytecode files of the classes compiled, or taken from a build cache, so far, or the assembly
+    ** file if assembly is written, or the file of the whole program if it is linked into one
+    */
+    public List<File> getOutputFiles() {
+        List<File> outputs = new ArrayList<File>();
+        if (codeGenerator.getAsmWriter() != null) {
+            outputs.add(codeGenerator.getAsmWriter().getFile());
+            return outputs;
+        }
+        if (codeGenerator.getLinker() != null && codeGenerator.getLinker().getCombinedFile() != null) {
+            outputs.add(codeGenerator.getLinker().getCombinedFile());
+            return outputs;
+        }
+        for (String className : classNames) {
+            outputs.add(new File(directory + "/" + className + outputExtension()));
+        }
+        return outputs;
     }
 
     private void loadNextToken() {
         currentToken = lexer.GetNextToken();
         currentTLexeme = currentToken.getLexeme();
         currentTType = currentToken.getType();
+        current = tree.addToken(currentToken, lexer.getLine());
 
         peekToken = lexer.PeekNextToken();
-        if (peekToken == null) {
-            peekToken = new Token("9null");
-        }
         peekTLexeme = peekToken.getLexeme();
         peekTType = peekToken.getType();
     }
 
     private void printErrorMsg(String actual, String expected) {
-        System.out.println("error: expected " + expected + " got " + actual);
-        System.out.println("  symbol:\t" + currentTLexeme);
-        if (semanticAnalyser.getCurrentClass() != null){
-            System.out.println("  location: subroutine " + semanticAnalyser.getCurrentSubroutine()
-                    + "\n  class " + semanticAnalyser.getCurrentClass());
+        out.println("error: expected " + expected + " got " + actual);
+        out.println("  symbol:\t" + currentTLexeme);
+        if (getCurrentClass() != null){
+            out.println("  location: subroutine " + getCurrentSubroutine()
+                    + "\n  class " + getCurrentClass());
+        }
+        out.println("  line " + lexer.getLine());
+        throw new CompileError();
+    }
+
+    // returns the class being parsed, or the class analysed last if its name hasn't been read yet
+    private String getCurrentClass() {
+        return className != null ? className : semanticAnalyser.getCurrentClass();
+    }
+
+    // returns the subroutine being parsed, or the subroutine analysed last if none of the class has been read yet
+    private String getCurrentSubroutine() {
+        return subroutineName != null ? subroutineName : semanticAnalyser.getCurrentSubroutine();
+    }
+
+    // returns the value of an integer constant, which must be digits that fit in an int
+    private int integerConstant(String lexeme) {
+        if (!lexeme.isEmpty() && Character.isDigit(lexeme.charAt(0))) {
+            try {
+                return Integer.parseInt(lexeme);
+            } catch (NumberFormatException e) {
+            }
         }
-        System.exit(0);
+        printErrorMsg(lexeme, "integer constant");
+        return 0;
     }
 
     // returns true if terminal belonging to an expression is encountered, false if not
@@ -154,851 +461,410 @@ public class Parser {
 
     // class grammar
 
-    private void jackClass() {
+    // parses a class into a new syntax tree, whose node 0 is the class
+    private SyntaxTree jackClass() {
+        tree = new SyntaxTree();
+        className = null;
+        subroutineName = null;
         finishedVarDeclars = false;
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "class");
         loadNextToken();
         isIdentifier(currentTType);
-        semanticAnalyser.setCurrentClass(currentTLexeme);
-        // create vm file for current class
-        codeGenerator.createVMFile(currentTLexeme, directory);
+        className = currentTLexeme;
+        int node = tree.add(SyntaxTree.Kind.CLASS, current);
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "{");
-        if (isClassVarDeclar(peekTLexeme) || isSubroutineDeclar(peekTLexeme)){
-            while (isClassVarDeclar(peekTLexeme) || isSubroutineDeclar(peekTLexeme)) {
-                memberDeclar();
-            }
+        while (isClassVarDeclar(peekTLexeme) || isSubroutineDeclar(peekTLexeme)) {
+            tree.addChild(node, memberDeclar());
         }
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "}");
+        tree.close(node, current);
+        return tree;
     }
 
-    private void memberDeclar() {
+    private int memberDeclar() {
         if (isClassVarDeclar(peekTLexeme)) {
-            if (!finishedVarDeclars) {
-                classVarDeclar();
-            } else {
-                System.out.println("error: all class variables must be declared before subroutines");
-                System.out.println("location: class "+semanticAnalyser.getCurrentClass());
-                System.exit(0);
+            if (finishedVarDeclars) {
+                out.println("error: all class variables must be declared before subroutines");
+                out.println("location: class "+getCurrentClass());
+                out.println("  line " + lexer.getLine());
+                throw new CompileError();
             }
-            codeGenerator.printToFile();
+            return classVarDeclar();
         } else if (isSubroutineDeclar(peekTLexeme)) {
             finishedVarDeclars = true;
-            subroutineDeclar();
-            codeGenerator.printToFile();
-        } else {
-            printErrorMsg(peekTLexeme, "class variable declaration or subroutine declaration");
+            return subroutineDeclar();
         }
+        printErrorMsg(peekTLexeme, "class variable declaration or subroutine declaration");
+        return SyntaxTree.NONE;
     }
 
     boolean finishedVarDeclars = false;
-    private void classVarDeclar() {
+    private int classVarDeclar() {
         loadNextToken();
-        if (currentTLexeme.compareTo("static") == 0) {
-            symbolStrings[0] = "static";
-        } else if (currentTLexeme.compareTo("field") == 0){
-            symbolStrings[0] = "field";
-        }else{
+        if (currentTLexeme.compareTo("static") != 0 && currentTLexeme.compareTo("field") != 0) {
             printErrorMsg(currentTLexeme, "static or field");
         }
+        int node = tree.add(SyntaxTree.Kind.CLASS_VAR, current);
         type();
-        symbolStrings[1] = currentTLexeme; // add the token type to the lexeme
         loadNextToken();
         isIdentifier(currentTType);
-        symbolStrings[2] = currentTLexeme;
-        // create new symbol for class variable
-        semanticAnalyser.newSymbol(symbolStrings);
-        if (peekTLexeme.compareTo(",") == 0) {
-            while (peekTLexeme.compareTo(",") == 0) {
-                loadNextToken(); // consume the ','
-                loadNextToken();
-                isIdentifier(currentTType);
-                symbolStrings[2] = currentTLexeme;
-                semanticAnalyser.newSymbol(symbolStrings);  // create new symbol for class variable
-            }
+        while (peekTLexeme.compareTo(",") == 0) {
+            loadNextToken(); // consume the ','
+            loadNextToken();
+            isIdentifier(currentTType);
         }
         loadNextToken();
         lexemeIsEqual(currentTLexeme, ";");
+        tree.close(node, current);
+        return node;
     }
 
     private void type() {
         loadNextToken();
-        if (currentTLexeme.compareTo("int") == 0){
-            ;
-        } else if (currentTLexeme.compareTo("char") == 0) {
-            ;
-        } else if (currentTLexeme.compareTo("boolean") == 0) {
-            ;
-        } else if (currentTType == Token.TokenType.IDENTIFIER) {
-            semanticAnalyser.addToTypeCheckList(currentTLexeme); // check if this type exists
-        } else {
+        if (!isTypeStrings.contains(currentTLexeme) && currentTType != Token.TokenType.IDENTIFIER) {
             printErrorMsg(currentTLexeme, "'int', 'char', 'boolean' or IDENTIFIER");
         }
     }
 
 
-    private void subroutineDeclar() {
+    private int subroutineDeclar() {
         loadNextToken();
-        boolean isMethod = false;
-        boolean isConstructor = false;
-        if (currentTLexeme.compareTo("constructor") == 0 || currentTLexeme.compareTo("function") == 0 ||
-            currentTLexeme.compareTo("method") == 0) {
-            if (currentTLexeme.compareTo("constructor") == 0){
-                isConstructor = true;
-            } else if (currentTLexeme.compareTo("method") == 0){
-                isMethod = true;
-            }
-        } else {
+        if (!isSubroutineDeclar(currentTLexeme)) {
             printErrorMsg(currentTLexeme, "'constructor', 'function' or 'method'");
         }
+        int node = tree.add(SyntaxTree.Kind.SUBROUTINE, current);
 
         if (peekTLexeme.compareTo("void") == 0 ) {
             loadNextToken(); // consume the void'
         } else {
            type();
         }
-        semanticAnalyser.setCurrentReturnType(currentTLexeme); // update current return type
         loadNextToken();
         isIdentifier(currentTType);
-
-        String funcName = currentTLexeme;
-
-        // add current subroutine to symbol table
-        symbolStrings[0] = "subr";
-        symbolStrings[1] = semanticAnalyser.getCurrentReturnType();
-        symbolStrings[2] = currentTLexeme;
-        semanticAnalyser.newSymbol(symbolStrings);
+        subroutineName = currentTLexeme;
 
         loadNextToken();
-        semanticAnalyser.newSymbolTable(); // create symbol table for current scope
-        if (isMethod) {
-            // add object of method to symbol table
-            symbolStrings[0] = "arg";
-            symbolStrings[1] = semanticAnalyser.getCurrentClass();
-            symbolStrings[2] = "this";
-            semanticAnalyser.newSymbol(symbolStrings);
-        }
-
         lexemeIsEqual(currentTLexeme, "(");
-        paramList();
+        paramList(node);
         loadNextToken();
         lexemeIsEqual(currentTLexeme, ")");
 
-        // allocate memory for new object if constructor has been called
-        if (isConstructor){
-            codeGenerator.writePush("constant",Integer.toString(semanticAnalyser.getClassFieldCount()));
-            codeGenerator.writeFunction("Memory", "alloc", 1);
-            codeGenerator.writePop("pointer", "0");
-        } else if (isMethod) {
-            codeGenerator.writePush("argument", "0");
-            codeGenerator.writePop("pointer", "0");
-        }
-
-        subroutineBody();
-        codeGenerator.writeFuncDeclar(semanticAnalyser.getCurrentClass(), funcName, semanticAnalyser.getSubrVarCount());
-        // delete symbol table as it is no longer needed
-        semanticAnalyser.removeSymbolTable();
+        tree.addChild(node, statements());
+        tree.close(node, current);
+        return node;
     }
 
-    private void paramList() {
-        symbolStrings[0] = "arg"; // the parameters will appear in the table as being of kind 'argument'
+    // adds a PARAMETER node to the subroutine for each parameter
+    private void paramList(int subroutine) {
         if (isType(peekTType, peekTLexeme)) {
-            type();
-            symbolStrings[1] = currentTLexeme;
-            // create new list object
-            paramTypesList = new ArrayList<String>();
-            paramTypesList.add(currentTLexeme); // add the parameter type to the list
-            loadNextToken();
-            isIdentifier(currentTType);
-            symbolStrings[2] = currentTLexeme;
-            semanticAnalyser.newSymbol(symbolStrings); // add parameter to symbol table
-            semanticAnalyser.markVarInitialised(currentTLexeme); // parameters initialised already in calling function
-            if (peekTLexeme.compareTo(",") == 0) {
-                while (peekTLexeme.compareTo(",") == 0) {
-                    loadNextToken(); // consume the ','
-                    type();
-                    symbolStrings[1] = currentTLexeme;
-                    paramTypesList.add(currentTLexeme); // add the parameter type to the list
-                    loadNextToken();
-                    isIdentifier(currentTType);
-                    symbolStrings[2] = currentTLexeme;
-                    semanticAnalyser.newSymbol(symbolStrings); // add parameter to symbol table
-                    semanticAnalyser.markVarInitialised(currentTLexeme);
+            while (true) {
+                type();
+                int node = tree.add(SyntaxTree.Kind.PARAMETER, current);
+                loadNextToken();
+                isIdentifier(currentTType);
+                tree.close(node, current);
+                tree.addChild(subroutine, node);
+                if (peekTLexeme.compareTo(",") != 0) {
+                    break;
                 }
+                loadNextToken(); // consume the ','
             }
-            // add the parameter types list to the subroutine symbol
-            semanticAnalyser.addParamTypesList(paramTypesList);
-            paramTypesList = null;
         }
     }
 
-    private void subroutineBody() {
-
-        semanticAnalyser.setIsValueReturned(false);
+    // parses a block of statements between braces, which is the body of a subroutine, if statement or while loop
+    private int statements() {
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "{");
-        if (isStatement(peekTLexeme)) {
-            while (isStatement(peekTLexeme)) {
-                statement();
-            }
+        int node = tree.add(SyntaxTree.Kind.STATEMENTS, current);
+        while (isStatement(peekTLexeme)) {
+            tree.addChild(node, statement());
         }
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "}");
-        // check if a value has been returned
-        if(!semanticAnalyser.getIsValueReturned() && semanticAnalyser.getCurrentSubroutine().compareTo("new") != 0
-                && semanticAnalyser.getCurrentReturnType().compareTo("void")!=0){
-            System.out.println("warning: expecting return value: control may reach the end of non void function");
-            System.out.println("  location: subroutine " + semanticAnalyser.getCurrentSubroutine() +"\n  class "
-                    + semanticAnalyser.getCurrentClass());
-        }
+        tree.close(node, current);
+        return node;
     }
 
     // statement grammar
 
-    private void statement() {
+    private int statement() {
 
         if (peekTLexeme.compareTo("var") == 0){
-            varDeclarStmt();
+            return varDeclarStmt();
         }
         else if (peekTLexeme.compareTo("let") == 0){
-            letStmt();
+            return letStmt();
         }
         else if (peekTLexeme.compareTo("if") == 0){
-            ifStmt();
+            return ifStmt();
         }
         else if (peekTLexeme.compareTo("while") == 0){
-            whileStmt();
+            return whileStmt();
         }
         else if (peekTLexeme.compareTo("do") == 0){
-            doStmt();
+            return doStmt();
         }
         else if (peekTLexeme.compareTo("return") == 0){
-            returnStmt();
+            return returnStmt();
         }
         else {
-            System.out.println("ERROR: Illegal start to statement: " + peekTLexeme);
-            System.exit(0);
+            out.println("ERROR: Illegal start to statement: " + peekTLexeme);
+            out.println("  line " + lexer.getLine());
+            throw new CompileError();
         }
     }
 
-    private void varDeclarStmt() {
-        // check if this code is reachable by checking whether value has been returned
-        semanticAnalyser.checkIfValueReturned();
-        // set symbol kind to var
-        symbolStrings[0] = "var";
+    private int varDeclarStmt() {
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "var");
+        int node = tree.add(SyntaxTree.Kind.VAR, current);
         type();
-        symbolStrings[1] = currentTLexeme;
         loadNextToken();
         isIdentifier(currentTType);
-        symbolStrings[2] = currentTLexeme;
-        // create new symbol for the variable
-        semanticAnalyser.newSymbol(symbolStrings);
-        if (peekTLexeme.compareTo(",") == 0) {
-            while (peekTLexeme.compareTo(",") == 0) {
-                loadNextToken(); // consume the ','
-                loadNextToken();
-                isIdentifier(currentTType);
-                symbolStrings[2] = currentTLexeme;
-                semanticAnalyser.newSymbol(symbolStrings); // create new symbol for the variable
-            }
+        while (peekTLexeme.compareTo(",") == 0) {
+            loadNextToken(); // consume the ','
+            loadNextToken();
+            isIdentifier(currentTType);
         }
         loadNextToken();
         lexemeIsEqual(currentTLexeme, ";");
+        tree.close(node, current);
+        return node;
     }
 
-    private void letStmt() {
-        // check if this code is reachable by checking whether value has been returned
-        semanticAnalyser.checkIfValueReturned();
-        semanticAnalyser.setIsAssignment(true);
+    private int letStmt() {
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "let");
+        int node = tree.add(SyntaxTree.Kind.LET, current);
         loadNextToken();
         isIdentifier(currentTType);
-        semanticAnalyser.checkVarDeclared(null, currentTLexeme, true); // check if variable has been declared
-        semanticAnalyser.markVarInitialised(currentTLexeme); // set that variable has been initialised
-        String id = currentTLexeme; // variable being assigned
-        if (semanticAnalyser.getIdType(currentTLexeme).compareTo("boolean") == 0) {
-            semanticAnalyser.setisBooleanStmt(true);// if it is boolean then the expression must also be boolean
-        }
-        String arrayName = null;
         if (peekTLexeme.compareTo("[") == 0){
-            arrayName = currentTLexeme;
             loadNextToken(); // consume the '['
-            semanticAnalyser.setIsArrayIndex(true);
-            expression();
+            tree.addChild(node, expression());
             loadNextToken();
             lexemeIsEqual(currentTLexeme, "]");
-            pushIdentifier(arrayName);
-            codeGenerator.writeArithmetic("add"); // add the array base address and index
-            id = null;
-            semanticAnalyser.setIsArrayIndex(false);
-        } else { // type can't be array if array index is being accessed
-            semanticAnalyser.setLhsType(semanticAnalyser.getIdType(currentTLexeme)); // set the lhs type
-            if(semanticAnalyser.getIsBooleanStmt()){
-                semanticAnalyser.setLhsType("-1");
-            }
         }
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "=");
-        expression();
+        tree.addChild(node, expression());
         loadNextToken();
         lexemeIsEqual(currentTLexeme, ";");
-        if (id != null) {
-            popIdentifier(id);
-        } else {
-            codeGenerator.writePop("temp", "0"); // tempoarily store result
-            codeGenerator.writePop("pointer", "1");
-            codeGenerator.writePush("temp", "0");
-            codeGenerator.writePop("that", "0");
-        }
-        // reset lhs type
-        semanticAnalyser.setLhsType("-1");
-        semanticAnalyser.setIsAssignment(false);
-        semanticAnalyser.setisBooleanStmt(false);
+        tree.close(node, current);
+        return node;
     }
 
-    private void ifStmt() {
-        int thisLabelNum = codeGenerator.getLabelNum(true);
-        // check if this code is reachable by checking whether value has been returned
-        semanticAnalyser.checkIfValueReturned();
-        semanticAnalyser.setUnreachableReturn(true); // returns might be unreachable
-
-        semanticAnalyser.setLhsType("-1");
+    private int ifStmt() {
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "if");
+        int node = tree.add(SyntaxTree.Kind.IF, current);
         loadNextToken();
-        codeGenerator.incrementLabelNum(true);
         lexemeIsEqual(currentTLexeme, "(");
-        semanticAnalyser.setisBooleanStmt(true);// expression for if statement must be boolean
-        expression();
+        tree.addChild(node, expression());
         loadNextToken();
         lexemeIsEqual(currentTLexeme, ")");
-        codeGenerator.writeIf("IF_TRUE", thisLabelNum);
-        codeGenerator.writeGoto("IF_FALSE",thisLabelNum);
-        codeGenerator.writeLabel("IF_TRUE", thisLabelNum);
-        semanticAnalyser.setisBooleanStmt(false);
-        semanticAnalyser.setLhsType("-1");
-        loadNextToken();
-        lexemeIsEqual(currentTLexeme, "{");
-        if (isStatement(peekTLexeme)) {
-            while(isStatement(peekTLexeme)) {
-                statement();
-            }
-        }
-        loadNextToken();
-        lexemeIsEqual(currentTLexeme, "}");
-
-        semanticAnalyser.setUnreachableReturn(false); //returns are no longer unreachable
-
+        tree.addChild(node, statements());
         if (peekTLexeme.compareTo("else") == 0) {
-            codeGenerator.writeGoto("IF_END", thisLabelNum);
-            codeGenerator.writeLabel("IF_FALSE",thisLabelNum);
             loadNextToken(); // eat the 'else'
-            loadNextToken();
-            lexemeIsEqual(currentTLexeme, "{");
-            if (isStatement(peekTLexeme)) {
-                while(isStatement(peekTLexeme)) {
-                    statement();
-                }
-            }
-            loadNextToken();
-            lexemeIsEqual(currentTLexeme, "}");
-            codeGenerator.writeLabel("IF_END", thisLabelNum);
-        } else {
-            codeGenerator.writeLabel("IF_FALSE", thisLabelNum);
+            tree.addChild(node, statements());
         }
+        tree.close(node, current);
+        return node;
     }
 
-    private void whileStmt() {
-        int thisLabelNum = codeGenerator.getLabelNum(false);
-        codeGenerator.incrementLabelNum(false);
-        // check if this code is reachable by checking whether value has been returned
-        semanticAnalyser.checkIfValueReturned();
-        semanticAnalyser.setUnreachableReturn(true); // returns might not be reached within the loop
-        semanticAnalyser.setLhsType("-1");
+    private int whileStmt() {
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "while");
-        codeGenerator.writeLabel("WHILE_EXP", thisLabelNum);
+        int node = tree.add(SyntaxTree.Kind.WHILE, current);
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "(");
-        semanticAnalyser.setisBooleanStmt(true);// expression for while statement must be boolean
-        expression();
+        tree.addChild(node, expression());
         loadNextToken();
         lexemeIsEqual(currentTLexeme, ")");
-        codeGenerator.writeArithmetic("not"); // negate expression
-        codeGenerator.writeIf("WHILE_END", thisLabelNum);
-        semanticAnalyser.setisBooleanStmt(false);// expression for if statement must be boolean
-        semanticAnalyser.setLhsType("-1");
-        loadNextToken();
-        lexemeIsEqual(currentTLexeme, "{");
-
-        if (isStatement(peekTLexeme)) {
-            while (isStatement(peekTLexeme)){
-                statement();
-            }
-        }
-        loadNextToken();
-        lexemeIsEqual(currentTLexeme, "}");
-        codeGenerator.writeGoto("WHILE_EXP", thisLabelNum);
-        codeGenerator.writeLabel("WHILE_END", thisLabelNum);
-        semanticAnalyser.setUnreachableReturn(false); // returns can now be reached again
+        tree.addChild(node, statements());
+        tree.close(node, current);
+        return node;
     }
 
-    private void doStmt() {
-        // check if this code is reachable by checking whether value has been returned
-        semanticAnalyser.checkIfValueReturned();
+    private int doStmt() {
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "do");
-        subroutineCall();
+        int node = tree.add(SyntaxTree.Kind.DO, current);
+        tree.addChild(node, subroutineCall());
         loadNextToken();
         lexemeIsEqual(currentTLexeme, ";");
-        codeGenerator.writePop("temp","0");
+        tree.close(node, current);
+        return node;
     }
 
-    private void subroutineCall() {
-        String className = null, funcName = null;
-        pushExpList();
-        // check if this code is reachable by checking whether value has been returned
-        semanticAnalyser.checkIfValueReturned();
+    private int subroutineCall() {
         loadNextToken();
         isIdentifier(currentTType);
-        boolean pushedObject = false;
+        int node = tree.add(SyntaxTree.Kind.CALL, current);
         // if call is to subroutine in another class
         if (peekTLexeme.compareTo(".") == 0) {
-            // find out if call is being made direct to class or by object
-            if(semanticAnalyser.idExistsInScope(currentTLexeme)){
-                className = semanticAnalyser.getIdType(currentTLexeme);
-                pushIdentifier(currentTLexeme); // push the identifier
-                pushedObject = true;
-            } else {
-                className = currentTLexeme;
-            }
             loadNextToken(); // consume '.'
             loadNextToken();
             isIdentifier(currentTType);
-            funcName = currentTLexeme;
-            // check if subroutine exists now or later
-            semanticAnalyser.checkSubrDeclared(className,currentTLexeme);
-        } else { // if call is to subroutine within this class
-            // check if subroutine exists now or later
-            codeGenerator.writePush("pointer", "0"); // is a method so push the object
-            className = semanticAnalyser.getCurrentClass();
-            funcName = currentTLexeme;
-            semanticAnalyser.checkSubrDeclared(semanticAnalyser.getCurrentClass(),currentTLexeme);
-            pushedObject = true;
-        }
-        expList.add(className); // add class of subroutine to the list
-        expList.add(funcName); // add name of subroutine to the list
-        expList.add(semanticAnalyser.getCurrentClass()); // add class of source of query to the list
-        expList.add(semanticAnalyser.getCurrentSubroutine());
+        }
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "(");
-        expressionList();
+        expressionList(node);
         loadNextToken();
         lexemeIsEqual(currentTLexeme, ")");
-        semanticAnalyser.addToParamCheckList(expList);
-        if (!pushedObject) {
-            codeGenerator.writeFunction(className, funcName, expList.size() - 4);
-        } else {
-            codeGenerator.writeFunction(className, funcName, expList.size() - 3);
-        }
-        popExpList();
+        tree.close(node, current);
+        return node;
     }
 
-    private void expressionList() {
+    // adds the expressions of an argument list to the call
+    private void expressionList(int call) {
         if(isExpression(peekTType, peekTLexeme)) {
-            semanticAnalyser.setLhsType("-1");
-            semanticAnalyser.setIsExpressionList(true);
-            expression();
-            if(expList!=null) {
-                if (semanticAnalyser.getLhsType().compareTo("-1") !=0) {
-                    expList.add(semanticAnalyser.getLhsType()); // add type of expression to expression list
-                }
-                else if (currentTType == Token.TokenType.INTEGER_CONST){
-                        expList.add("int");
-                } else if (currentTType == Token.TokenType.STRING_LIT){
-                    expList.add("String");
-                }
-                else if(currentTLexeme.compareTo("true") == 0 || currentTLexeme.compareTo("false") == 0){
-                    expList.add("boolean");
-                }
-                else if(currentTLexeme.compareTo("null") == 0){
-                    expList.add("null");
-                }
-            }
-            if(peekTLexeme.compareTo(",") == 0) {
-                while (peekTLexeme.compareTo(",") == 0) {
-                    semanticAnalyser.setIsExpressionList(true);
-                    loadNextToken(); // consume ','
-                    semanticAnalyser.setLhsType("-1");
-                    expression();
-                    if(expList!=null) {
-                        if (semanticAnalyser.getLhsType().compareTo("-1") !=0) {
-                            expList.add(semanticAnalyser.getLhsType()); // add type of expression to expression list
-                        } else if (currentTType == Token.TokenType.INTEGER_CONST){
-                                expList.add("int");
-                        } else if (currentTType == Token.TokenType.STRING_LIT){
-                            expList.add("String");
-                        }
-                        else if(currentTLexeme.compareTo("true") == 0 || currentTLexeme.compareTo("false") == 0){
-                            expList.add("boolean");
-                        }
-                        else if(currentTLexeme.compareTo("null") == 0){
-                            expList.add("null");
-                        }
-                    }
-                }
+            tree.addChild(call, expression());
+            while (peekTLexeme.compareTo(",") == 0) {
+                loadNextToken(); // consume ','
+                tree.addChild(call, expression());
             }
         }
-        semanticAnalyser.setIsExpressionList(false);
     }
 
-    private void returnStmt(){
-        // value has been returned so set valueReturned to true
-        semanticAnalyser.setIsValueReturned(true);
+    private int returnStmt(){
         loadNextToken();
         lexemeIsEqual(currentTLexeme, "return");
-        semanticAnalyser.setIsReturn(true);
-        semanticAnalyser.setLhsType("-1");
+        int node = tree.add(SyntaxTree.Kind.RETURN, current);
         if (isExpression(peekTType, peekTLexeme)) {
-            // make sure the current return type is not void
-            semanticAnalyser.checkReturnVoid(peekTLexeme);
-            expression();
-        } else {
-            codeGenerator.writePush("constant","0");
+            tree.addChild(node, expression());
         }
         loadNextToken();
-        semanticAnalyser.setIsReturn(false);
-        semanticAnalyser.setLhsType("-1");
         lexemeIsEqual(currentTLexeme, ";");
-        codeGenerator.writeReturn();
+        tree.close(node, current);
+        return node;
     }
 
     // expression grammar
-    boolean metOperator = false;
-    private void expression() {
-        metOperator = false;
-        relationalExpr();
-        if (peekTLexeme.compareTo("&") == 0 || peekTLexeme.compareTo("|") == 0) {
-            metOperator = true;
-            while (peekTLexeme.compareTo("&") == 0 || peekTLexeme.compareTo("|") == 0) {
-                // aray indices are of type int. Comparators make the expression boolean
-                if(semanticAnalyser.isArrayIndex()){
-                    System.out.println("error: incompatible types: array index must be of type int ");
-                    System.out.println("  symbol: " + peekTLexeme);
-                    System.out.println("  location: subroutine " + semanticAnalyser.getCurrentSubroutine()
-                            +"\n  class " + semanticAnalyser.getCurrentClass());
-                    System.exit(0);
-                }
-                semanticAnalyser.setLhsType("-1"); // allow for comparison of different types in boolean statements
-                loadNextToken(); // consume the '&' or '|'
-                String op = currentTLexeme;
-                relationalExpr();
-                if (op.compareTo("&") == 0){
-                    codeGenerator.writeArithmetic("and");
-                } else if (op.compareTo("|") == 0) {
-                    codeGenerator.writeArithmetic("or");
-                }
-            }
-            // ensure that the expression is boolean if there are no comparators
-        } else if (semanticAnalyser.getIsBooleanStmt() && metOperator == false) {
-            String type = semanticAnalyser.getIdType(currentTLexeme);
-            boolean isCorrectType = false;
-            if (type != null){
-                isCorrectType = (type.compareTo("boolean") == 0);
-            } else if (currentTLexeme.compareTo("true") == 0 || currentTLexeme.compareTo("false") == 0) {
-                isCorrectType = true;
-                type = currentTType.name();
-            } else {
-                type = currentTType.name();
-            }
-            if(!isCorrectType) {
-                System.out.println("error: incompatible types: '" + type.toLowerCase()
-                        +"' cannot be converted to boolean ");
-                System.out.println("  symbol: " + currentTLexeme);
-                System.out.println("  location: subroutine " + semanticAnalyser.getCurrentSubroutine() +"\n  class "
-                        + semanticAnalyser.getCurrentClass());
-                System.exit(0);
-            }
+
+    private int expression() {
+        int node = tree.add(SyntaxTree.Kind.EXPRESSION, current + 1);
+        tree.addChild(node, relationalExpr());
+        while (peekTLexeme.compareTo("&") == 0 || peekTLexeme.compareTo("|") == 0) {
+            loadNextToken(); // consume the '&' or '|'
+            tree.addChild(node, relationalExpr());
         }
+        tree.close(node, current);
+        return node;
     }
 
-    private void relationalExpr() {
-        arithmeticExpr();
-        if (peekTLexeme.compareTo("=") == 0 || peekTLexeme.compareTo(">") == 0 || peekTLexeme.compareTo("<") == 0) {
-            metOperator = true;
-            while (peekTLexeme.compareTo("=") == 0 || peekTLexeme.compareTo(">") == 0
-                    || peekTLexeme.compareTo("<") == 0) {
-                // aray indices are of type int. Comparators make the expression boolean
-                if(semanticAnalyser.isArrayIndex()){
-                    System.out.println("error: incompatible types: array index must be of type int ");
-                    System.out.println("  symbol: " + peekTLexeme);
-                    System.out.println("  location: subroutine " + semanticAnalyser.getCurrentSubroutine()
-                            +"\n  class " + semanticAnalyser.getCurrentClass());
-                    System.exit(0);
-                }
-                semanticAnalyser.setLhsType("-1"); // allow for comparation of different types in boolean statements
-                loadNextToken(); // consume the '=', '>' or '<'
-                String op = currentTLexeme;
-                arithmeticExpr();
-                if (op.compareTo("=") == 0) {
-                    codeGenerator.writeArithmetic("eq");
-                } else if (op.compareTo(">") == 0) {
-                    codeGenerator.writeArithmetic("gt");
-                } else if (op.compareTo("<") == 0) {
-                    codeGenerator.writeArithmetic("lt");
-                }
-            }
+    private int relationalExpr() {
+        int first = arithmeticExpr();
+        if (peekTLexeme.compareTo("=") != 0 && peekTLexeme.compareTo(">") != 0 && peekTLexeme.compareTo("<") != 0) {
+            return first;
         }
+        int node = tree.add(SyntaxTree.Kind.RELATIONAL, current + 1);
+        tree.addChild(node, first);
+        while (peekTLexeme.compareTo("=") == 0 || peekTLexeme.compareTo(">") == 0
+                || peekTLexeme.compareTo("<") == 0) {
+            loadNextToken(); // consume the '=', '>' or '<'
+            tree.addChild(node, arithmeticExpr());
+        }
+        tree.close(node, current);
+        return node;
     }
 
-    private void arithmeticExpr() {
-        term();
-        if(peekTLexeme.compareTo("+") == 0 || peekTLexeme.compareTo("-") == 0) {
-            while (peekTLexeme.compareTo("+") == 0 || peekTLexeme.compareTo("-") == 0) {
-                loadNextToken(); // consume the '+' or '-'
-                String op = currentTLexeme;
-                term();
-                if (op.compareTo("+") == 0){
-                    codeGenerator.writeArithmetic("add");
-                } else if (op.compareTo("-") == 0) {
-                    codeGenerator.writeArithmetic("sub");
-                }
-            }
+    private int arithmeticExpr() {
+        int first = term();
+        if (peekTLexeme.compareTo("+") != 0 && peekTLexeme.compareTo("-") != 0) {
+            return first;
         }
+        int node = tree.add(SyntaxTree.Kind.ARITHMETIC, current + 1);
+        tree.addChild(node, first);
+        while (peekTLexeme.compareTo("+") == 0 || peekTLexeme.compareTo("-") == 0) {
+            loadNextToken(); // consume the '+' or '-'
+            tree.addChild(node, term());
+        }
+        tree.close(node, current);
+        return node;
     }
 
-    private void term() {
-        factor();
-        if (peekTLexeme.compareTo("*") == 0 || peekTLexeme.compareTo("/") == 0) {
-            while (peekTLexeme.compareTo("*") == 0 || peekTLexeme.compareTo("/") == 0) {
-                loadNextToken(); // consume the '*' or '/'
-                String op = currentTLexeme;
-                factor();
-                if(op.compareTo("*") == 0) {
-                    codeGenerator.writeFunction("Math","multiply",2);
-                } else if (op.compareTo("/") == 0) {
-                    codeGenerator.writeFunction("Math","divide",2);
-                }
-            }
+    private int term() {
+        int first = factor();
+        if (peekTLexeme.compareTo("*") != 0 && peekTLexeme.compareTo("/") != 0) {
+            return first;
         }
+        int node = tree.add(SyntaxTree.Kind.TERM, current + 1);
+        tree.addChild(node, first);
+        while (peekTLexeme.compareTo("*") == 0 || peekTLexeme.compareTo("/") == 0) {
+            loadNextToken(); // consume the '*' or '/'
+            tree.addChild(node, factor());
+        }
+        tree.close(node, current);
+        return node;
     }
 
-    private void factor() {
-        String op = null;
-        if (peekTLexeme.compareTo("-") == 0 || peekTLexeme.compareTo("~") == 0) {
-            loadNextToken(); // consume the '-' or '~'
-            op = currentTLexeme;
-        }
-        operand();
-        if(op != null){
-            if (op.compareTo("-") == 0){
-                codeGenerator.writeArithmetic("neg");
-            } else if (op.compareTo("~") == 0) {
-                codeGenerator.writeArithmetic("not");
-            }
+    private int factor() {
+        if (peekTLexeme.compareTo("-") != 0 && peekTLexeme.compareTo("~") != 0) {
+            return operand();
         }
+        loadNextToken(); // consume the '-' or '~'
+        int node = tree.add(SyntaxTree.Kind.UNARY, current);
+        tree.addChild(node, operand());
+        tree.close(node, current);
+        return node;
     }
 
-    private void operand() {
-        boolean inScope = false;
+    private int operand() {
         loadNextToken();
-        String arrayName = null;
-        String funcName = null;
-        String className = null;
-        pushExpList();
+        int node;
 
         if (currentTType == Token.TokenType.INTEGER_CONST){
-            // if current match type is not set, or not equal to current type, print error message
-            semanticAnalyser.checkOperandTypes("int", currentTLexeme);
-            codeGenerator.writePush("constant",currentTLexeme);
+            node = tree.add(SyntaxTree.Kind.INTEGER, current);
+            tree.setValue(node, integerConstant(currentTLexeme));
         }
         else if(currentTType == Token.TokenType.IDENTIFIER){
-            inScope = false;
-            int Parser = 0;
-            boolean pushedObject = false;
-
+            int name = current;
             if(peekTLexeme.compareTo(".") == 0){
-                // find out if call is being made direct to class or by object. The class of the object is className.
-                if(semanticAnalyser.idExistsInScope(currentTLexeme)){
-                    className = semanticAnalyser.getIdType(currentTLexeme);
-                    pushIdentifier(currentTLexeme);
-                    pushedObject = true;
-                } else {
-                    className = currentTLexeme;
-                }
+                // a call, or a variable of another class or object
                 loadNextToken(); // consume the '.'
                 loadNextToken();
                 isIdentifier(currentTType);
-                // given that it is a variable not in scope, check for it's existence in given class & check its type
-                // accessing fields in other classes is illegal so error will be issued later
-                if (peekTLexeme.compareTo("(") != 0) {
-                    codeGenerator.writePop("pointer", "0");
-                    List<Object> objectVarRef = new ArrayList<Object>();
-                    objectVarRef.add(className);
-                    objectVarRef.add(currentTLexeme);
-                    codeGenerator.addObjectVarDetails(objectVarRef);
-                    semanticAnalyser.addToObjectVarRefList(objectVarRef);
-
-                    semanticAnalyser.checkVarDeclared(className, currentTLexeme, false);
-                    if (peekTLexeme.compareTo("[") != 0){ // only check type if it's not an array
-                        semanticAnalyser.checkType(currentTLexeme, className, true);
-                    }
-                } else { // given that it is a subroutine not in scope, check for its existence in given class
-                    funcName = currentTLexeme;
-
-                }
+                node = tree.add(peekTLexeme.compareTo("(") == 0 ? SyntaxTree.Kind.CALL : SyntaxTree.Kind.MEMBER, name);
             } else if(peekTLexeme.compareTo("(") != 0){ // case if a variable in current scope
-                // given that it is a variable, check if the operand has been declared within scope
-                semanticAnalyser.checkVarDeclared(null,currentTLexeme,true);
-                if (peekTLexeme.compareTo("[") != 0){ // only check type and initialisation if it's not an array
-                    pushIdentifier(currentTLexeme);
-                    semanticAnalyser.checkType(currentTLexeme, null, true);
-                    // type can't be array in this case
-                    // set lhs type if not already set
-                    if (semanticAnalyser.getLhsType().compareTo("-1") == 0 && !semanticAnalyser.isArrayIndex()) {
-                        semanticAnalyser.setLhsType(semanticAnalyser.getIdType(currentTLexeme));
-                    }
-                    semanticAnalyser.checkInitialised(currentTLexeme);
-                } else {
-                    arrayName = currentTLexeme;
-                }
-            } else {
-                inScope = true; // it is a subroutine within current class
-                funcName = currentTLexeme;
-                className= semanticAnalyser.getCurrentClass();
+                node = tree.add(SyntaxTree.Kind.VARIABLE, name);
+            } else { // it is a subroutine within current class
+                node = tree.add(SyntaxTree.Kind.CALL, name);
             }
 
             if(peekTLexeme.compareTo("[") == 0){
                 loadNextToken(); // consume the '['
-                semanticAnalyser.setIsArrayIndex(true);
-                expression();
-                if (arrayName!=null) {
-                    pushIdentifier(arrayName);
-                }
+                tree.addChild(node, expression());
                 loadNextToken();
                 lexemeIsEqual(currentTLexeme, "]");
-                codeGenerator.writeArithmetic("add"); // add the array base address and index
-                codeGenerator.writePop("pointer","1");
-                codeGenerator.writePush("that","0");
-                semanticAnalyser.setIsArrayIndex(false);
             } else if(peekTLexeme.compareTo("(") == 0){
-                expList.add(className);
-                expList.add(funcName);
-                expList.add(semanticAnalyser.getCurrentClass()); // add class from which call originates
-                expList.add(semanticAnalyser.getCurrentSubroutine());
-                semanticAnalyser.checkSubrDeclared(className,funcName);
-                semanticAnalyser.checkType(funcName,className ,false);
-
-                // if subroutine is declared
-                if (inScope) { // check if subroutine exists in current scope now or later & check its type
-                    if (semanticAnalyser.getLhsType().compareTo("-1") == 0) { // set lhs type if not already set
-                        semanticAnalyser.setLhsType(semanticAnalyser.getIdType(currentTLexeme));
-                    }
-                    inScope = false;
-                } else {
-                    if (semanticAnalyser.getLhsType().compareTo("-1") == 0) { // set lhs type if not already set
-                        semanticAnalyser.setLhsType("-2"); // unknown function return type
-                    }
-                }
                 loadNextToken(); // consume the '('
-                expressionList();
-                semanticAnalyser.addToParamCheckList(expList);
-                if (!pushedObject) {
-                    codeGenerator.writeFunction(className, funcName, expList.size() - 4);
-                } else {
-                    codeGenerator.writeFunction(className, funcName, expList.size() - 3);
-                }
+                expressionList(node);
                 loadNextToken();
                 lexemeIsEqual(currentTLexeme, ")");
             }
         }
         else if(currentTLexeme.compareTo("(") == 0){
-            expression();
+            node = tree.add(SyntaxTree.Kind.PAREN, current);
+            tree.addChild(node, expression());
             loadNextToken();
             lexemeIsEqual(currentTLexeme, ")");
         }
         else if (currentTType == Token.TokenType.STRING_LIT){
-            semanticAnalyser.checkOperandTypes("String", currentTLexeme);
-            // process string into suitable vm format
-            codeGenerator.writePush("constant", Integer.toString(currentTLexeme.length()-2));
-            codeGenerator.writeFunction("String", "new", 1);
-            for (int i = 1; i < currentTLexeme.length()-1; i++){
-                codeGenerator.writePush("constant", Integer.toString(Character.codePointAt(currentTLexeme, i)));
-                codeGenerator.writeFunction("String", "appendChar", 2);
-            }
-        }
-        else if(currentTLexeme.compareTo("true") == 0){
-            semanticAnalyser.checkOperandTypes("boolean", currentTLexeme);
-            codeGenerator.writePush("constant","1");
-            codeGenerator.writeArithmetic("neg");
-        }
-        else if(currentTLexeme.compareTo("false") == 0){
-            semanticAnalyser.checkOperandTypes("boolean", currentTLexeme);
-            codeGenerator.writePush("constant","0");
-        }
-        else if(currentTLexeme.compareTo("null") == 0){
-            String matchType = semanticAnalyser.getMatchType();
-            codeGenerator.writePush("constant","0");
-        }
-        else if(currentTLexeme.compareTo("this") == 0){
-            if (semanticAnalyser.getLhsType().compareTo("-1") == 0) {
-                semanticAnalyser.setLhsType(semanticAnalyser.getCurrentClass());
-            }
-            codeGenerator.writePush("pointer", "0");
+            node = tree.add(SyntaxTree.Kind.STRING, current);
         }
         else if (currentTType == Token.TokenType.UNKNOWN){
-            System.out.println("ERROR: unknown type encountered '"+currentTLexeme+"'");
-            System.exit(0);
+            out.println("ERROR: unknown type encountered '"+currentTLexeme+"'");
+            out.println("  line " + lexer.getLine());
+            throw new CompileError();
         }
-
-        popExpList();
-    }
-
-    // pushes identifiers to stack, using their index and segment location
-    public void pushIdentifier(String id){
-        if (semanticAnalyser.getIdKind(id).compareTo("ARGUMENT") == 0) {
-            codeGenerator.writePush("argument", Integer.toString(semanticAnalyser.getIdIndex(id)));
-        } else if (semanticAnalyser.getIdKind(id).compareTo("VARIABLE") == 0) {
-            codeGenerator.writePush("local", Integer.toString(semanticAnalyser.getIdIndex(id)));
-        } else if (semanticAnalyser.getIdKind(id).compareTo("STATIC") == 0) {
-            codeGenerator.writePush("static", Integer.toString(semanticAnalyser.getIdIndex(id)));
-        } else if (semanticAnalyser.getIdKind(id).compareTo("FIELD") == 0) {
-            codeGenerator.writePush("this", Integer.toString(semanticAnalyser.getIdIndex(id)));
-        }
-    }
-
-    // pops identifiers to stack, using their index and segment location
-    public void popIdentifier(String id){
-        if (semanticAnalyser.getIdKind(id).compareTo("ARGUMENT") == 0) {
-            codeGenerator.writePop("argument", Integer.toString(semanticAnalyser.getIdIndex(id)));
-        } else if (semanticAnalyser.getIdKind(id).compareTo("VARIABLE") == 0) {
-            codeGenerator.writePop("local", Integer.toString(semanticAnalyser.getIdIndex(id)));
-        } else if (semanticAnalyser.getIdKind(id).compareTo("STATIC") == 0) {
-            codeGenerator.writePop("static", Integer.toString(semanticAnalyser.getIdIndex(id)));
-        } else if (semanticAnalyser.getIdKind(id).compareTo("FIELD") == 0) {
-            codeGenerator.writePop("this", Integer.toString(semanticAnalyser.getIdIndex(id)));
-        }
-    }
-
-    // creates new expression list for a subroutine expression list
-    public void pushExpList(){
-        expList = new ArrayList<String>();
-        expListList.add(0, expList);
-    }
-
-    // removes newest expression list from list expression lists list
-    public void popExpList(){
-
-        expListList.remove(0);
-        if (expListList.size() > 0) {
-            expList = expListList.get(0);
-        } else{
-            expList = null;
+        else { // true, false, null, this, or a token which does nothing as an operand
+            node = tree.add(SyntaxTree.Kind.KEYWORD, current);
         }
+        tree.close(node, current);
+        return node;
     }
-}
\ No newline at end of file
+}
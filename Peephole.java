@@ -0,0 +1,196 @@
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/* removes instructions from the vm code of a function by replacing short sequences of instructions with shorter ones
+** that have the same effect. Each instruction is added to the end of the new code in turn, and the rules are tried on
+** the end of the new code until none apply, so the result of one rule can be matched by another
+*/
+public class Peephole {
+
+    public enum Rule {
+        // push constant 1; neg; not  ->  push constant 0
+        CONSTANT_TRUE,
+        // push constant 0; if-goto L  ->  (nothing) and push constant 1; neg; if-goto L  ->  goto L
+        CONSTANT_BRANCH,
+        // not; not  ->  (nothing)
+        DOUBLE_NOT,
+        // push constant 0; eq; not; if-goto L  ->  if-goto L
+        NOT_IF_GOTO,
+        // eq|gt|lt; if-goto T; goto F; label T  ->  eq|gt|lt; not; if-goto F, if nothing else jumps to T
+        IF_GOTO_GOTO,
+        // push X; pop X  ->  (nothing)
+        PUSH_POP,
+        // push A; push B; add; pop pointer 1  ->  (nothing), when it sets pointer 1 to what it already is
+        ARRAY_ADDRESS;
+
+        // name of the rule on the command line, e.g. constant-true
+        public String optionName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private Set<Rule> rules;
+
+    public Peephole(Set<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /* returns an optimiser using the rules named in a comma separated list, all for every rule. Returns null if a
+    ** name is not a rule
+    */
+    public static Peephole fromNames(String names) {
+        if (names.compareTo("all") == 0) {
+            return new Peephole(EnumSet.allOf(Rule.class));
+        }
+        Set<Rule> rules = EnumSet.noneOf(Rule.class);
+        for (String name : names.split(",")) {
+            Rule found = null;
+            for (Rule rule : Rule.values()) {
+                if (rule.optionName().compareTo(name) == 0) {
+                    found = rule;
+                }
+            }
+            if (found == null) {
+                return null;
+            }
+            rules.add(found);
+        }
+        return new Peephole(rules);
+    }
+
+    // the rules used, as they would be given on the command line
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Rule rule : rules) {
+            sb.append(sb.length() == 0 ? "" : ",").append(rule.optionName());
+        }
+        return sb.toString();
+    }
+
+    // optimises the code of a function, returning the number of instructions removed
+    public int optimise(VMCode code) {
+        // number of jumps to each label, as a label can only be removed when nothing else jumps to it
+        Map<Long, Integer> jumps = new HashMap<Long, Integer>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.op(i) == VMCode.Opcode.GOTO || code.op(i) == VMCode.Opcode.IF_GOTO) {
+                jumps.merge(label(code.arg(i), code.value(i)), 1, Integer::sum);
+            }
+        }
+
+        VMCode optimised = new VMCode();
+        for (int i = 0; i < code.size(); i++) {
+            emit(optimised, code.op(i), code.arg(i), code.value(i), jumps);
+        }
+        int removed = code.size() - optimised.size();
+        code.replaceCode(optimised);
+        return removed;
+    }
+
+    // adds an instruction to the end of the code, then applies the rules to the end of the code
+    private void emit(VMCode code, VMCode.Opcode op, int arg, int value, Map<Long, Integer> jumps) {
+        code.add(op, arg, value);
+        int n = code.size();
+
+        if (rules.contains(Rule.DOUBLE_NOT) && is(code, n - 2, VMCode.Opcode.NOT)
+                && is(code, n - 1, VMCode.Opcode.NOT)) {
+            code.truncate(n - 2);
+        } else if (rules.contains(Rule.CONSTANT_TRUE) && isTrue(code, n - 3) && is(code, n - 1, VMCode.Opcode.NOT)) {
+            code.truncate(n - 3);
+            emit(code, VMCode.Opcode.PUSH, VMCode.Segment.CONSTANT.ordinal(), 0, jumps);
+        } else if (rules.contains(Rule.CONSTANT_BRANCH) && op == VMCode.Opcode.IF_GOTO && isConstant(code, n - 2, 0)) {
+            code.truncate(n - 2);
+        } else if (rules.contains(Rule.CONSTANT_BRANCH) && op == VMCode.Opcode.IF_GOTO && isTrue(code, n - 3)) {
+            code.truncate(n - 3);
+            emit(code, VMCode.Opcode.GOTO, arg, value, jumps);
+        } else if (rules.contains(Rule.NOT_IF_GOTO) && op == VMCode.Opcode.IF_GOTO && isConstant(code, n - 4, 0)
+                && is(code, n - 3, VMCode.Opcode.EQ) && is(code, n - 2, VMCode.Opcode.NOT)) {
+            code.truncate(n - 4);
+            emit(code, VMCode.Opcode.IF_GOTO, arg, value, jumps);
+        } else if (rules.contains(Rule.IF_GOTO_GOTO) && op == VMCode.Opcode.LABEL && isBoolean(code, n - 4)
+                && is(code, n - 3, VMCode.Opcode.IF_GOTO) && is(code, n - 2, VMCode.Opcode.GOTO)
+                && code.arg(n - 3) == arg && code.value(n - 3) == value
+                && jumps.getOrDefault(label(arg, value), 0) == 1) {
+            int falseArg = code.arg(n - 2), falseValue = code.value(n - 2);
+            code.truncate(n - 3);
+            emit(code, VMCode.Opcode.NOT, 0, 0, jumps);
+            emit(code, VMCode.Opcode.IF_GOTO, falseArg, falseValue, jumps);
+        } else if (rules.contains(Rule.PUSH_POP) && op == VMCode.Opcode.POP && is(code, n - 2, VMCode.Opcode.PUSH)
+                && code.arg(n - 2) == arg && code.value(n - 2) == value) {
+            code.truncate(n - 2);
+        } else if (rules.contains(Rule.ARRAY_ADDRESS) && op == VMCode.Opcode.POP
+                && arg == VMCode.Segment.POINTER.ordinal() && value == 1 && isRepeatedAddress(code, n - 4)) {
+            code.truncate(n - 4);
+        }
+    }
+
+    /* returns true if instructions i to i + 3 set pointer 1 to the address of an element of an array, and pointer 1
+    ** was last set by the same instructions with nothing in between that could change either of the values added
+    */
+    private boolean isRepeatedAddress(VMCode code, int i) {
+        if (!isAddressOperand(code, i) || !isAddressOperand(code, i + 1) || !is(code, i + 2, VMCode.Opcode.ADD)) {
+            return false;
+        }
+        for (int j = i - 1; j >= 3; j--) {
+            VMCode.Opcode op = code.op(j);
+            if (op == VMCode.Opcode.POP && code.arg(j) == VMCode.Segment.POINTER.ordinal() && code.value(j) == 1) {
+                for (int k = 0; k < 3; k++) {
+                    if (code.op(j - 3 + k) != code.op(i + k) || code.arg(j - 3 + k) != code.arg(i + k)
+                            || code.value(j - 3 + k) != code.value(i + k)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            boolean unchanged = op == VMCode.Opcode.PUSH
+                    || (op.compareTo(VMCode.Opcode.ADD) >= 0 && op.compareTo(VMCode.Opcode.NOT) <= 0)
+                    || (op == VMCode.Opcode.POP && code.arg(j) == VMCode.Segment.TEMP.ordinal());
+            if (!unchanged) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // returns true if instruction i pushes a value that only a pop to a segment other than temp can change
+    private boolean isAddressOperand(VMCode code, int i) {
+        if (!is(code, i, VMCode.Opcode.PUSH)) {
+            return false;
+        }
+        int seg = code.arg(i);
+        return seg != VMCode.Segment.TEMP.ordinal() && seg != VMCode.Segment.THAT.ordinal()
+                && seg != VMCode.Segment.FIELD.ordinal();
+    }
+
+    // returns true if instruction i leaves true or false on the stack
+    private boolean isBoolean(VMCode code, int i) {
+        if (i < 0) {
+            return false;
+        }
+        VMCode.Opcode op = code.op(i);
+        if (op == VMCode.Opcode.NOT) {
+            return isBoolean(code, i - 1);
+        }
+        return op == VMCode.Opcode.EQ || op == VMCode.Opcode.GT || op == VMCode.Opcode.LT;
+    }
+
+    // returns true if instructions i and i + 1 push true
+    private boolean isTrue(VMCode code, int i) {
+        return isConstant(code, i, 1) && is(code, i + 1, VMCode.Opcode.NEG);
+    }
+
+    private boolean isConstant(VMCode code, int i, int value) {
+        return is(code, i, VMCode.Opcode.PUSH) && code.arg(i) == VMCode.Segment.CONSTANT.ordinal()
+                && code.value(i) == value;
+    }
+
+    private boolean is(VMCode code, int i, VMCode.Opcode op) {
+        return i >= 0 && i < code.size() && code.op(i) == op;
+    }
+
+    private static long label(int kind, int number) {
+        return ((long) kind << 32) | (number & 0xffffffffL);
+    }
+}
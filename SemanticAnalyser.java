@@ -1,6 +1,15 @@
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.PrintStream;
 
 // carries out semantic analysis as tokens are being parsed
 public class SemanticAnalyser {
@@ -18,8 +27,14 @@ public class SemanticAnalyser {
 
     // current class in analysis, return type of current subroutine & current type of the lhs of an expression
     private String currentClass = null, currentReturnType = null, lhsType = "-1";
+    // id of the current class in Names
+    private int currentClassId = Token.NONE;
     // Symbol for current subroutine
     private Symbol currentSubroutine = null;
+    // line of the token currently being analysed, and of the name of the current class
+    private int currentLine = 0, classLine = 0;
+    // where error and warning messages are printed
+    private PrintStream out = System.out;
 
     // true if array index is currently being parsed, false if not
     private boolean isArrayIndex = false;
@@ -36,25 +51,12 @@ public class SemanticAnalyser {
     // true if currently in expression list statement, false if not
     private boolean isExpressionList = false;
 
-    /* Below are are lists filled with various identifiers that need to be checked once all class files have been parsed
-    *  identifiers that belong to other classes in the form of a path preceded by a type, or several that must be
-    *  matched e.g. {class, subroutine, type}
-    *
-    *  'origin class' below refers to the class in which the type to be checked was added
-    *
-    *  variables with declarations to be checked and types to be checked against
-    *  {class, name, type, origin class, origin subroutine, type, origin class, origin subroutine...}
-    */
-    private List <List<String>> varCheckList = new ArrayList<List<String>>();
-    // subroutines with declarations to be checked, and return types to be checked against
-    // {class, name, type, origin class, origin subroutine}
-    private List <List<String>> subrCheckList = new ArrayList<List<String>>();
-    // types to be checked
-    private List <String> typeCheckList = new ArrayList <String>();
-    // subroutine call expression lists to be checked {class, name, origin class, origin subroutine, param1, param2,...}
-    private List <List<String>> paramCheckList = new ArrayList <List<String>>();
-    // variables called from other classes whose values need to be pushed {class, name, file object, line number}
+    // types, variables, subroutines and subroutine calls that need to be checked once all class files have been parsed
+    private DeferredChecks deferredChecks = new DeferredChecks();
+    // variables called from other classes whose values need to be pushed {class, name, vm file, line index}
     private List <List<Object>> objectVarRefList = new ArrayList<List<Object>>();
+    // names of the classes each class refers to, found from the identifiers it adds to the lists above
+    private Map <String, Set<String>> dependencies = new HashMap<String, Set<String>>();
 
     //                              METHODS
 
@@ -79,21 +81,22 @@ public class SemanticAnalyser {
         }
 
         if (isArrayIndex) {
-            System.out.println("error: incompatible types: Array index must be type 'int'\n\t'" + id
+            out.println("error: incompatible types: Array index must be type 'int'\n\t'" + id
                     + "' is type '" + actualType + "'");
-            System.exit(0);
+            throw new CompileError();
         }else if (isReturn && !isExpressionList) {
-            System.out.println("warning: incompatible types: Expected return type '" + expectedType + "'. '"
+            out.println("warning: incompatible types: Expected return type '" + expectedType + "'. '"
                     + id +"' is type '" + actualType + "'");
         } else if (isAssignment) {
-            System.out.println("warning: incompatible types: '" + id + "' of type '" + actualType
+            out.println("warning: incompatible types: '" + id + "' of type '" + actualType
                     + "' cannot be assigned to '"
                     + expectedType + "'");
         } else {
-            System.out.println("warning: incompatible types: '" + id + "' is not of type '" + expectedType + "'");
+            out.println("warning: incompatible types: '" + id + "' is not of type '" + expectedType + "'");
         }
 
-        System.out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class " + currentClass);
+        out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class " + currentClass
+                + "\n  line " + currentLine);
     }
 
     //                              CREATORS
@@ -104,43 +107,34 @@ public class SemanticAnalyser {
         symbolTableList.add(0, symbolTable);
     }
 
-    // creates a new Symbol and inserts it at the top of the current symbol table
-    // symbol name = {kind, type, name}
-    public void newSymbol(String[] symbolName){
+    // creates a new Symbol of the given kind and inserts it at the top of the current symbol table
+    // symbol ids = {type, name}, the ids of the names in Names
+    public void newSymbol(Symbol.SymbolKind kind, int[] symbolIds){
         Symbol symbol = new Symbol();
 
-        String s = symbolName[0];
         // set the kind of the variable
-        if (s.compareTo("static") == 0){
-            symbol.setKind("static");
-        } else if (s.compareTo("field") == 0){
-            symbol.setKind("field");
-        } else if (s.compareTo("arg") == 0){
-            symbol.setKind("arg");
-        } else if (s.compareTo("var") == 0){
-            symbol.setKind("var");
-        } else if (s.compareTo("subr") == 0){
-            symbol.setKind("subr");
+        symbol.setKind(kind);
+        if (kind == Symbol.SymbolKind.SUBROUTINE) {
             currentSubroutine = symbol; // set the current subroutine symbol
-        } else if (s.compareTo("class") == 0) {
-            symbol.setKind("class");
         }
 
         // set the index of the symbol
-        symbol.setIndex(symbolTableList.get(0).getCount(s));
+        symbol.setIndex(symbolTableList.get(0).getCount(kind));
         //increment the count on the symbol table
-        symbolTableList.get(0).incrementCount(s);
+        symbolTableList.get(0).incrementCount(kind);
 
         // set the symbol type
-        symbol.setType(symbolName[1]);
+        symbol.setType(symbolIds[0]);
 
         // set the symbol name
-        symbol.setName(symbolName[2]);
+        symbol.setName(symbolIds[1]);
 
         // make sure symbol of same name and type does not already exist within the scope
-        if(idExistsInScope(symbolName[2]) && getIdType(symbolName[2]).compareTo(symbolName[1]) == 0  ){
-            System.out.println("error: Already exists. '" + symbolName[2] +"' already declared within scope");
-            System.exit(0);
+        Symbol existing = resolve(symbolIds[1]);
+        if(existing != null && existing.getTypeId() == symbolIds[0]){
+            out.println("error: Already exists. '" + Names.name(symbolIds[1]) +"' already declared within scope");
+            out.println("  line " + currentLine);
+            throw new CompileError();
         }
 
         // add the symbol to the current symbol table
@@ -151,10 +145,11 @@ public class SemanticAnalyser {
     //                              MODIFIERS
 
     // marks symbol of matching identifier as initialised
-    public void markVarInitialised(String symbolName) {
+    public void markVarInitialised(int id) {
         for(SymbolTable st:symbolTableList) {
-            if(st.lookUp(symbolName)) {
-                st.setSymInitialised(symbolName);
+            Symbol s = st.getSymbol(id);
+            if(s != null) {
+                s.setInitialised(true);
                 break;
             }
         }
@@ -165,56 +160,59 @@ public class SemanticAnalyser {
         symbolTableList.remove(0);
     }
 
-    // adds paramater type list to subroutine symbol
-    public void addParamTypesList(List<String> list) {
-        currentSubroutine.setParamTypes(list);
+    // adds the ids of the paramater types to subroutine symbol
+    public void addParamTypesList(List<Integer> list) {
+        int[] paramTypes = new int[list.size()];
+        for (int i = 0; i < paramTypes.length; i++) {
+            paramTypes[i] = list.get(i);
+        }
+        currentSubroutine.setParamTypes(paramTypes);
     }
 
-    // adds variable and its class to check list
-    public void addToVarCheckList(String className, String id){
-        boolean isContained  = false;
-        for (List<String> s: varCheckList) {
-            if (s.get(0).compareTo(className) == 0 && s.get(1).compareTo(id) == 0 ) {
-                isContained = true;
-            }
-        }
-        if (isContained == false) {
-            List<String> details = new ArrayList<String>();
-            details.add(className);
-            details.add(id);
-            varCheckList.add(details);
+    // records that the current class refers to the given class
+    private void addDependency(int className) {
+        if (className != Token.NONE && currentClass != null) {
+            dependencies.computeIfAbsent(currentClass, k -> new TreeSet<String>()).add(Names.name(className));
         }
     }
 
+    // returns the class and subroutine currently being analysed
+    private DeferredChecks.Origin origin() {
+        return new DeferredChecks.Origin(currentClassId,
+                currentSubroutine == null ? Token.NONE : currentSubroutine.getNameId());
+    }
+
+    // adds variable and its class to check list
+    public void addToVarCheckList(int className, int id){
+        addDependency(className);
+        deferredChecks.addVariable(new DeferredChecks.Member(className, id), origin());
+    }
+
     // adds subroutine and its class to check list
-    public void addToSubrCheckList(String className, String id){
-        boolean isContained  = false;
-        for (List<String> s: subrCheckList) {
-            if (s.get(0).compareTo(className) == 0 && s.get(1).compareTo(id) == 0) {
-                isContained = true;
-            }
-        }
-        if (isContained == false) {
-            List<String> details = new ArrayList<String>();
-            details.add(className);
-            details.add(id);
-            subrCheckList.add(details);
-        }
+    public void addToSubrCheckList(int className, int id){
+        addDependency(className);
+        deferredChecks.addSubroutine(new DeferredChecks.Member(className, id), origin());
     }
 
     // adds type to list of types to be checked
-    public void addToTypeCheckList(String type) {
-        if (!typeCheckList.contains(type)) {
-            typeCheckList.add(type);
-        }
+    public void addToTypeCheckList(int type) {
+        addDependency(type);
+        deferredChecks.addType(type);
     }
 
-    // adds expression list to list be compared with a subroutine param list later
-    public void addToParamCheckList(List<String> exprList){
-        paramCheckList.add(exprList);
+    // adds the types of the arguments of a call to be compared with the subroutine's param list later
+    public void addToParamCheckList(int className, int id, List<String> argumentTypes){
+        addDependency(className);
+        int[] types = new int[argumentTypes.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = Names.id(argumentTypes.get(i));
+        }
+        deferredChecks.addCall(new DeferredChecks.CallCheck(new DeferredChecks.Member(className, id), origin(),
+                types));
     }
 
     public void addToObjectVarRefList (List<Object> list){
+        addDependency(Names.id((String)list.get(0)));
         objectVarRefList.add(list);
     }
 
@@ -224,60 +222,60 @@ public class SemanticAnalyser {
 
     // checks if identifier already exists in current scope. True if so, false if not. 
     // Used to avoid identifiers with same name when creating new symbols
-    public boolean idExistsInScope(String id) {
-        for(SymbolTable st:symbolTableList) {
-            if(st.lookUp(id)) {
-                return true;
+    public boolean idExistsInScope(int id) {
+        return resolve(id) != null;
+    }
+
+    /* returns the symbol an identifier refers to, or null if it is not within scope. The scopes are searched from the
+    *  class scope inwards, so a class variable is found before a local or argument of the same name
+    */
+    public Symbol resolve(int id) {
+        for (int i = symbolTableList.size() - 1; i >= 0; i--) {
+            Symbol s = symbolTableList.get(i).getSymbol(id);
+            if (s != null) {
+                return s;
             }
         }
-        return false;
+        return null;
     }
 
     /* checks if matching symbol of identifier matches certain type. Uses lhsType by default unless a different type is
-    *  provided. If the identifier is not within scope, type that needs to be matched will be added to its details in
-    * varCheckList or subrCheckList. Also covers type checking for array indices
+    *  provided. If the identifier is not within scope, type that needs to be matched will be added to its deferred
+    * check. Also covers type checking for array indices
     */
 
     public void checkReturnVoid(String id){
         // in the case that no return type is void, nothing should be returned, hence calling check ty
         if (isReturn && currentReturnType.compareTo("void") == 0){
-            System.out.println("error: unexpected return value \n\t" + id);
-            System.out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class " + currentClass);
-            System.exit(0);
+            out.println("error: unexpected return value \n\t" + id);
+            out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class " + currentClass
+                + "\n  line " + currentLine);
+            throw new CompileError();
         }
     }
 
     // checks type for identifiers
-    public void checkType(String id, String className, boolean isVar) {
+    public void checkType(int id, int className, boolean isVar) {
         // type only needs to be checked if standards are set up
         if (lhsType.compareTo("-1") != 0 || isReturn && !isExpressionList || isArrayIndex) {
             // get the type the identifier will be checked against
             String type = getMatchType();
 
             // if a symbol for this identifier exists but is not of matching type, print error message
-            if (idExistsInScope(id)) {
-                if (type.compareTo(getIdType(id)) != 0 && !((type.compareTo("char") == 0
-                        && getIdType(id).compareTo("int") == 0) || (type.compareTo("int") == 0
-                        && getIdType(id).compareTo("char") == 0))) {
-                    printTypeErrorMsg(id, type, getIdType(id));
+            Symbol symbol = resolve(id);
+            if (symbol != null) {
+                String idType = symbol.getType();
+                if (type.compareTo(idType) != 0 && !((type.compareTo("char") == 0
+                        && idType.compareTo("int") == 0) || (type.compareTo("int") == 0
+                        && idType.compareTo("char") == 0))) {
+                    printTypeErrorMsg(Names.name(id), type, idType);
                 }
             } else if (isVar) { // later, this variable will be checked to see if it's type is suitable
-                for (List<String> s : varCheckList) {
-                    if (s.get(1).compareTo(id) == 0 && s.get(0).compareTo(className) == 0) {
-                        s.add(type);
-                        s.add(currentClass);
-                        s.add(currentSubroutine.getName());
-                    }
-                }
+                deferredChecks.addVariableUse(new DeferredChecks.Member(className, id),
+                        new DeferredChecks.TypeUse(Names.id(type), origin()));
             } else {
-                for (List<String> s : subrCheckList) {
-                    if (s.get(1).compareTo(id) == 0 && s.get(0).compareTo(className) == 0) {
-                        s.add(type);
-                        s.add(currentClass);
-                        s.add(currentSubroutine.getName());
-                    }
-
-                }
+                deferredChecks.addSubroutineUse(new DeferredChecks.Member(className, id),
+                        new DeferredChecks.TypeUse(Names.id(type), origin()));
             }
         }
     }
@@ -296,25 +294,25 @@ public class SemanticAnalyser {
                     && type.compareTo("char") == 0))) {
 
                 if (matchType.compareTo("char") == 0 && type.compareTo("int") == 0){
-                    System.out.println("true1");}
+                    out.println("true1");}
 
                 if (matchType.compareTo("int") == 0 && type.compareTo("char") == 0){
-                    System.out.println("true2");}
+                    out.println("true2");}
 
                 if (!((matchType.compareTo("char") == 0
                         && type.compareTo("int") == 0) || (matchType.compareTo("int") == 0
                         && type.compareTo("char") == 0)))
-                {System.out.println("true3");}
+                {out.println("true3");}
 
 
                 if (!isReturn) {
-                    System.out.println("warning: incompatible types: " + type + " cannot be converted to " + matchType);
-                    System.out.println("  symbol: '" + id + "'");
+                    out.println("warning: incompatible types: " + type + " cannot be converted to " + matchType);
+                    out.println("  symbol: '" + id + "'");
                 } else { // if in return statement, print different error message
                     printTypeErrorMsg(id, currentReturnType, type);
                 }
-                System.out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class "
-                        + currentClass);
+                out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class "
+                        + currentClass + "\n  line " + currentLine);
             }
         }
         // set lhs if not already set
@@ -323,50 +321,55 @@ public class SemanticAnalyser {
         }
     }
 
-    // checks if a variable has been declared within scope and prints error message if not and error is set to true
-    // also prints error if array index is being evaluated and variable is not of type integer
-    public void checkVarDeclared(String className, String id, boolean error) {
+    /* checks if a variable has been declared within scope and prints error message if not and error is set to true.
+    *  A variable referred to through a class or object, whose class is given, is checked once all classes are parsed,
+    *  even if the class is the current one
+    */
+    public void checkVarDeclared(int className, int id, boolean error) {
         // if the variable does not exist but is not from another class
-        if(!idExistsInScope(id) && (className == currentClass || className == null)){
+        if(className == Token.NONE && !idExistsInScope(id)){
             if (error) {
-                System.out.println("error: '" + id + "' has not been declared in class '"+ currentClass + "'");
-                System.exit(0);
+                out.println("error: '" + Names.name(id) + "' has not been declared in class '"+ currentClass + "'");
+                out.println("  line " + currentLine);
+                throw new CompileError();
             }
-        } else if (className != null && className != currentClass) { // if the variable is from another class
+        } else if (className != Token.NONE) { // if the variable is from another class
             addToVarCheckList(className, id);
         }
     }
 
     // checks if a subroutine has been declared within scope and adds to list to check later.
-    public void checkSubrDeclared(String className, String id) {
-        if(!idExistsInScope(id) || className != null){
+    public void checkSubrDeclared(int className, int id) {
+        if(!idExistsInScope(id) || className != Token.NONE){
             addToSubrCheckList(className, id);
         }
     }
 
     // checks if a local variable has been initialised, issues error message if not
-    public void checkInitialised(String id){
+    public void checkInitialised(int id){
         if (!varIsInitialised(id) && symbolTableList.get(0).lookUp(id)) {
-            System.out.println("warning: variable '"+id+"' should be initialised before use");
-            System.out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class " + currentClass);
+            out.println("warning: variable '"+Names.name(id)+"' should be initialised before use");
+            out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class " + currentClass
+                + "\n  line " + currentLine);
         }
     }
 
     // checks if value has been returned for current subroutine. If so, issues error for unreachable code
     public void checkIfValueReturned(){
         if(isValueReturned){
-            System.out.println("warning: unreachable code: value has already been returned for current subroutine "
+            out.println("warning: unreachable code: value has already been returned for current subroutine "
                     + currentSubroutine.getName());
-            System.out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class " + currentClass);
+            out.println("  location: subroutine " + currentSubroutine.getName() +"\n  class " + currentClass
+                + "\n  line " + currentLine);
         }
     }
 
     // checks whether a given variable has been initialised within entire scope
-    public boolean varIsInitialised(String symbolName) {
-        boolean init = false;
+    public boolean varIsInitialised(int id) {
         for(SymbolTable st:symbolTableList) {
-            if(st.lookUp(symbolName)) {
-                return st.symIsInitialised(symbolName);
+            Symbol s = st.getSymbol(id);
+            if(s != null) {
+                return s.isInitialised();
             }
         }
         return false;
@@ -374,207 +377,322 @@ public class SemanticAnalyser {
 
 
 
-    //                      post parsing checkers
+    //                      merging
 
-    // checks to see if a class exists for any specified types in program
-    public void solveTypeCheckList() {
-        for (String type : typeCheckList){
-            if(!programSymbolTable.lookUp(type)){
-                System.out.println("error: unknown symbol: type '" + type + "' not found");
-                System.exit(0);
-            }
+    // adds a class that is not being parsed, given the symbol table of its class scope
+    public void addClass(String className, SymbolTable classTable) {
+        setCurrentClass(className);
+        classSymbolTables.add(classTable);
+    }
+
+    /* adds a class parsed by a separate analyser, along with its checks still to be made, as though this analyser had
+    *  gone on to parse it. Classes must be merged in the order they would have been parsed in, so that checks on the
+    *  same member from several classes are combined in the same order
+    */
+    public void mergeClass(SemanticAnalyser other) {
+        currentLine = other.classLine;
+        setCurrentClass(other.currentClass);
+        classSymbolTables.add(other.classSymbolTables.get(0));
+        symbolTableList = other.symbolTableList;
+
+        // carry on from the state the other analyser finished the class in
+        currentLine = other.currentLine;
+        // a class without subroutines leaves the subroutine of the class before it as the current one
+        if (other.currentSubroutine != null) {
+            currentSubroutine = other.currentSubroutine;
+            currentReturnType = other.currentReturnType;
+        }
+        lhsType = other.lhsType;
+        isArrayIndex = other.isArrayIndex;
+        isReturn = other.isReturn;
+        isAssignment = other.isAssignment;
+        isValueReturned = other.isValueReturned;
+        unreachableReturn = other.unreachableReturn;
+        isBooleanStmt = other.isBooleanStmt;
+        isExpressionList = other.isExpressionList;
+
+        deferredChecks.merge(other.deferredChecks);
+        objectVarRefList.addAll(other.objectVarRefList);
+        for (Map.Entry<String, Set<String>> d : other.dependencies.entrySet()) {
+            dependencies.computeIfAbsent(d.getKey(), k -> new TreeSet<String>()).addAll(d.getValue());
         }
     }
 
-    // checks to see if variables in varCheckList have been declared
-    public void solveVarCheckList(){
-        for(List<String> v: varCheckList) {
-            int tableIndex = 0;
-            // check if the class it is meant to be in exists
-            if(!programSymbolTable.lookUp(v.get(0))){
-                System.out.println("error: unknown symbol: class '" + v.get(0) + "' not found");
-                System.out.println("  symbol: '"+ v.get(1) + "'");
-                System.out.println("  location: subroutine" + v.get(4) + "\nclass " + v.get(3));
-                System.exit(0);
-            } else {
-                tableIndex = programSymbolTable.getSymbol(v.get(0)).getIndex();
-            }
-            // check if symbol of same name exists
-            if(!classSymbolTables.get(tableIndex).lookUp(v.get(1))){
-                System.out.println("error: unknown symbol: symbol '" + v.get(1) + "' not found in class " + v.get(0));
-                System.out.println("  location: subroutine" + v.get(4) + "\nclass " + v.get(3));
-                System.exit(0);
-            }
+    /* returns true if the class last parsed left state set that the next class would start with. A class parsed by a
+    *  separate analyser started without it, so may need parsing again to give the same messages
+    */
+    public boolean carriesState() {
+        return lhsType.compareTo("-1") != 0 || isArrayIndex || isReturn || isAssignment || unreachableReturn
+                || isBooleanStmt || isExpressionList;
+    }
+
 
-            Symbol s = classSymbolTables.get(tableIndex).getSymbol(v.get(1));
+    //                      post parsing checkers
 
-            // check if symbol of same kind exists
-            if (s.getKind().compareTo("STATIC") != 0 && s.getKind().compareTo("FIELD") != 0) {
-                System.out.println("error: unknown symbol: class variable member '" + v.get(1) + "' not found in class "
-                        + v.get(0));
-                System.out.println("  location: subroutine" + v.get(4) + "\nclass " + v.get(3));
+    /* makes the checks that need all classes to have been parsed, in the order they were added, stopping at the first
+    *  error. With more than one job the checks are split into runs made on up to jobs threads at once. The messages of
+    *  each run are held back and printed in order, so the output is the same as when they are made one after another
+    */
+    public void solveCheckLists(int jobs) {
+        List<Consumer<PrintStream>> checks = new ArrayList<Consumer<PrintStream>>();
+        for (int type : deferredChecks.getTypes()) {
+            checks.add(o -> solveTypeCheck(type, o));
+        }
+        for (DeferredChecks.MemberCheck v : deferredChecks.getVariables()) {
+            checks.add(o -> solveVarCheck(v, o));
+        }
+        for (DeferredChecks.MemberCheck v : deferredChecks.getSubroutines()) {
+            checks.add(o -> solveSubrCheck(v, o));
+        }
+        for (DeferredChecks.CallCheck call : deferredChecks.getCalls()) {
+            checks.add(o -> solveParamCheck(call, o));
+        }
 
-                System.exit(0);
+        if (jobs <= 1 || checks.size() <= 1) {
+            for (Consumer<PrintStream> check : checks) {
+                check.accept(out);
+            }
+            return;
+        }
+        int runs = Math.min(checks.size(), jobs * 4);
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        List<ByteArrayOutputStream> outputs = new ArrayList<ByteArrayOutputStream>();
+        List<ForkJoinTask<RuntimeException>> tasks = new ArrayList<ForkJoinTask<RuntimeException>>();
+        try {
+            for (int r = 0; r < runs; r++) {
+                List<Consumer<PrintStream>> run = checks.subList(r * checks.size() / runs,
+                        (r + 1) * checks.size() / runs);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                PrintStream runOut = new PrintStream(output, true);
+                outputs.add(output);
+                // returns the error which stopped the run, or null if every check in it was made
+                tasks.add(pool.submit(() -> {
+                    try {
+                        for (Consumer<PrintStream> check : run) {
+                            check.accept(runOut);
+                        }
+                        return null;
+                    } catch (RuntimeException e) {
+                        return e;
+                    }
+                }));
             }
-            // see if the types match the type of the variable
-            String sType = s.getType();
-            for (int i=2; i < v.size()-2; i+=3) {
-                if (sType.compareTo(v.get(i)) != 0 ) {
-                    System.out.println("warning: incompatible types: "+v.get(i)+ " cannot be converted to " + sType);
-                    System.out.println("  symbol: '"+ v.get(1) + "'");
-                    System.out.println("  location: subroutine" + v.get(i+2) + "\nclass " + v.get(i+1));
+            for (int r = 0; r < runs; r++) {
+                RuntimeException stopped = tasks.get(r).join();
+                out.write(outputs.get(r).toByteArray(), 0, outputs.get(r).size());
+                if (stopped != null) {
+                    throw stopped;
                 }
             }
+        } finally {
+            // once an error stops the loop, the work not yet started on is dropped rather than done for nothing
+            tasks.forEach(task -> task.cancel(false));
+            pool.shutdown();
         }
     }
 
-    // checks to see if subroutines in subrCheckList have been declared
-    public void solveSubrCheckList(){
-        for(List<String> v: subrCheckList) {
-            int tableIndex = 0;
-            // check if the class it is meant to be in exists
-            if(!programSymbolTable.lookUp(v.get(0))){
-                System.out.println("error: unknown symbol: class '" + v.get(0) + "' not found");
-                System.out.println("  location: subroutine " + v.get(4) + "\n  class " + v.get(3));
-                System.exit(0);
-            } else {
-                tableIndex = programSymbolTable.getSymbol(v.get(0)).getIndex();
-            }
-            // check if symbol of same name exists
-            if(!classSymbolTables.get(tableIndex).lookUp(v.get(1))){
-                System.out.println("error: unknown symbol: symbol '" + v.get(1) + "' not found in class " + v.get(0));
-                System.out.println("  location: subroutine " + v.get(4) + "\n  class " + v.get(3));
-                System.exit(0);
-            }
+    // returns the class scope symbol table of a class, or null if there is no such class
+    private SymbolTable classTable(int className) {
+        Symbol classSymbol = programSymbolTable.getSymbol(className);
+        return classSymbol == null ? null : classSymbolTables.get(classSymbol.getIndex());
+    }
 
-            Symbol s = classSymbolTables.get(tableIndex).getSymbol(v.get(1));
+    // checks to see if a class exists for a type specified in the program
+    private void solveTypeCheck(int type, PrintStream out) {
+        if(!programSymbolTable.lookUp(type)){
+            out.println("error: unknown symbol: type '" + Names.name(type) + "' not found");
+            throw new CompileError();
+        }
+    }
 
-            // check if symbol of same kind exists
-            if (s.getKind().compareTo("SUBROUTINE") != 0) {
-                System.out.println("error: unknown symbol: subroutine '" + v.get(1) + "' not found in class "
-                        + v.get(0));
-                System.out.println("  location: subroutine " + v.get(4) + "\n  class " + v.get(3));
-                System.exit(0);
-            }
-            // see if the types match the return type of the subroutine
-            String sType = s.getType();
-
-            for (int i=2; i < v.size()-2; i+=3) {
-                if (sType.compareTo(v.get(i)) != 0 ) {
-                    System.out.println("warning: incompatible types: subroutine '" + v.get(1) + "' in class '" +v.get(0)
-                            +"' has return type " + sType + " which can't be converted to " + v.get(i));
-                    System.out.println("  symbol: '"+ v.get(1) + "'");
-                    System.out.println("  location: subroutine " + v.get(i+2) + "\n  class " + v.get(i+1));
-                    printExprList(v,0);
-                }
+    // checks to see if a variable of another class has been declared, and has the types expected of it
+    private void solveVarCheck(DeferredChecks.MemberCheck v, PrintStream out){
+        String className = Names.name(v.member().className()), name = Names.name(v.member().name());
+        DeferredChecks.Origin at = v.reportedAt();
+        String atClass = Names.name(at.className()), atSubroutine = Names.name(at.subroutine());
+        // check if the class it is meant to be in exists
+        SymbolTable classTable = classTable(v.member().className());
+        if(classTable == null){
+            out.println("error: unknown symbol: class '" + className + "' not found");
+            out.println("  symbol: '"+ name + "'");
+            out.println("  location: subroutine" + atSubroutine + "\nclass " + atClass);
+            throw new CompileError();
+        }
+        // check if symbol of same name exists
+        Symbol s = classTable.getSymbol(v.member().name());
+        if(s == null){
+            out.println("error: unknown symbol: symbol '" + name + "' not found in class " + className);
+            out.println("  location: subroutine" + atSubroutine + "\nclass " + atClass);
+            throw new CompileError();
+        }
+
+        // check if symbol of same kind exists
+        if (s.getKind() != Symbol.SymbolKind.STATIC && s.getKind() != Symbol.SymbolKind.FIELD) {
+            out.println("error: unknown symbol: class variable member '" + name + "' not found in class "
+                    + className);
+            out.println("  location: subroutine" + atSubroutine + "\nclass " + atClass);
+
+            throw new CompileError();
+        }
+        // see if the types match the type of the variable
+        String sType = s.getType();
+        for (DeferredChecks.TypeUse use : v.uses()) {
+            if (s.getTypeId() != use.type()) {
+                out.println("warning: incompatible types: "+Names.name(use.type())+ " cannot be converted to " + sType);
+                out.println("  symbol: '"+ name + "'");
+                out.println("  location: subroutine" + Names.name(use.origin().subroutine()) + "\nclass "
+                        + Names.name(use.origin().className()));
             }
         }
     }
 
-    // makes sure expressions entered in subroutine call match with its parameters
-    public void solveParamCheckList(){
-
-        for(List<String> pl: paramCheckList) {
+    // checks to see if a subroutine of a class has been declared, and returns the types expected of it
+    private void solveSubrCheck(DeferredChecks.MemberCheck v, PrintStream out){
+        String className = Names.name(v.member().className()), name = Names.name(v.member().name());
+        DeferredChecks.Origin at = v.reportedAt();
+        String atClass = Names.name(at.className()), atSubroutine = Names.name(at.subroutine());
+        // check if the class it is meant to be in exists
+        SymbolTable classTable = classTable(v.member().className());
+        if(classTable == null){
+            out.println("error: unknown symbol: class '" + className + "' not found");
+            out.println("  location: subroutine " + atSubroutine + "\n  class " + atClass);
+            throw new CompileError();
+        }
+        // check if symbol of same name exists
+        Symbol s = classTable.getSymbol(v.member().name());
+        if(s == null){
+            out.println("error: unknown symbol: symbol '" + name + "' not found in class " + className);
+            out.println("  location: subroutine " + atSubroutine + "\n  class " + atClass);
+            throw new CompileError();
+        }
 
-            // find the symbol of the matching subroutine. Existence of the subroutine has already been checked
-            // beforehand
-            int tableIndex = 0;
-            Symbol s = classSymbolTables.get(programSymbolTable.getSymbol(pl.get(0)).getIndex()).getSymbol(pl.get(1));
-            List <String> list;
-            if(s == null){
-                System.out.println("this");
-                list = null;
-            } else {
-                list = s.getParamTypes();
+        // check if symbol of same kind exists
+        if (s.getKind() != Symbol.SymbolKind.SUBROUTINE) {
+            out.println("error: unknown symbol: subroutine '" + name + "' not found in class "
+                    + className);
+            out.println("  location: subroutine " + atSubroutine + "\n  class " + atClass);
+            throw new CompileError();
+        }
+        // see if the types match the return type of the subroutine
+        String sType = s.getType();
+
+        for (DeferredChecks.TypeUse use : v.uses()) {
+            if (s.getTypeId() != use.type()) {
+                out.println("warning: incompatible types: subroutine '" + name + "' in class '" + className
+                        +"' has return type " + sType + " which can't be converted to " + Names.name(use.type()));
+                out.println("  symbol: '"+ name + "'");
+                out.println("  location: subroutine " + Names.name(use.origin().subroutine()) + "\n  class "
+                        + Names.name(use.origin().className()));
+                out.print(v.describe());
             }
+        }
+    }
+
+    // makes sure the arguments of a subroutine call match with its parameters
+    private void solveParamCheck(DeferredChecks.CallCheck call, PrintStream out){
+        String className = Names.name(call.subroutine().className()), name = Names.name(call.subroutine().name());
+        String location = "\n  location: " + Names.name(call.origin().subroutine()) + "\n  class "
+                + Names.name(call.origin().className());
+        int[] found = call.argumentTypes();
+
+        // find the symbol of the matching subroutine. Existence of the subroutine has already been checked
+        // beforehand
+        Symbol s = classTable(call.subroutine().className()).getSymbol(call.subroutine().name());
+        int[] list;
+        if(s == null){
+            out.println("this");
+            list = null;
+        } else {
+            list = s.getParamTypes();
+        }
 
-            int listLength;
-            if(list != null) {
-                listLength = list.size();
+        int listLength;
+        if(list != null) {
+            listLength = list.length;
+        } else {
+            listLength = 0;
+        }
+        // see if expression list matches that of the subroutine
+
+        // if no arguments were required, but 1 or more was given
+        if (listLength == 0 && found.length > 0) {
+            out.println("error: too many arguments : subroutine '" + name + "' in class '" + className
+                    + "' cannot be used");
+            out.print("\n  required: no arguments");
+            out.print("\n  found: ");
+            printExprList(found, out);
+            out.println(location);
+            throw new CompileError();
+        } else if (found.length < listLength){ // if subroutine call expression list is too small
+
+            out.println("error: too few arguments : subroutine '" + name + "' in class '" + className
+                    + "' cannot be used");
+            out.print("\n  required: ");
+            printExprList(list, out);
+            out.print("\n  found: ");
+            if (found.length > 0){
+                printExprList(found, out);
             } else {
-                listLength = 0;
+                out.print("none");
             }
-            // see if expression list matches that of the subroutine
-
-
-            // if no arguments were required, but 1 or more was given
-            if (listLength == 0 && pl.size() > 4) {
-                System.out.println("error: too many arguments : subroutine '" + pl.get(1) + "' in class '" + pl.get(0)
-                        + "' cannot be used");
-                System.out.print("\n  required: no arguments");
-                System.out.print("\n  found: ");
-                printExprList(pl,4);
-                System.out.println("\n  location: "+pl.get(3)+"\n  class "+ pl.get(2));
-                System.exit(0);
-            } else if (pl.size()-4 < listLength){ // if subroutine call expression list is too small
-
-                System.out.println("error: too few arguments : subroutine '" + pl.get(1) + "' in class '" + pl.get(0)
-                        + "' cannot be used");
-                System.out.print("\n  required: ");
-                printExprList(list,0);
-                System.out.print("\n  found: ");
-                if (pl.size() > 4){
-                    printExprList(pl,4);
-                } else {
-                    System.out.print("none");
-                }
-                System.out.println("\n  location: "+pl.get(3)+"\n  class "+ pl.get(2));
-                System.exit(0);
+            out.println(location);
+            throw new CompileError();
 
-            } else if(pl.size()-4 > listLength){ // if subroutine call expression list is too large
-                // if a type doesn't match
+        } else if(found.length > listLength){ // if subroutine call expression list is too large
 
-                System.out.println("error: too many arguments : subroutine '" + pl.get(1) + "' in class '" + pl.get(0)
-                        + "' cannot be used");
-                System.out.print("\n  required: ");
-                printExprList(list,0);
-                System.out.print("\n  found: ");
-                printExprList(pl,4);
-                System.out.println("\n  location: "+pl.get(3)+"\n  class "+ pl.get(2));
-                System.exit(0);
-
-            } else if (listLength == pl.size()-4) {
-                for (int i = 0; i < listLength; i++) {
-                    // if a type doesn't match
-                    if (list.get(i).compareTo(pl.get(i + 4)) != 0 && pl.get(i+4).compareTo("Array") != 0
-                            && list.get(i).compareTo("Array") != 0 && pl.get(i+4).compareTo("null") != 0
-                            && !((list.get(i).compareTo("int") == 0 && pl.get(i+4).compareTo("char") == 0)
-                            || (list.get(i).compareTo("char") == 0 && pl.get(i+4).compareTo("int") == 0))
-                            && pl.get(i+4).compareTo("-2") != 0
-                    ) {
-                        System.out.println("error: argument type error : subroutine '" + pl.get(1) + "' in class '"
-                                + pl.get(0) + "' cannot be used");
-                        System.out.print("\n  required: ");
-                        printExprList(list,0);
-                        System.out.print("\n  found: ");
-                        printExprList(pl,4);
-                        System.out.println("\n  location: "+pl.get(3)+"\n  class "+ pl.get(2));
-                        System.exit(0);
-                    }
+            out.println("error: too many arguments : subroutine '" + name + "' in class '" + className
+                    + "' cannot be used");
+            out.print("\n  required: ");
+            printExprList(list, out);
+            out.print("\n  found: ");
+            printExprList(found, out);
+            out.println(location);
+            throw new CompileError();
+
+        } else {
+            for (int i = 0; i < listLength; i++) {
+                int param = list[i], arg = found[i];
+                // if a type doesn't match
+                if (param != arg && arg != Names.ARRAY
+                        && param != Names.ARRAY && arg != Token.NULL
+                        && !((param == Token.INT && arg == Token.CHAR)
+                        || (param == Token.CHAR && arg == Token.INT))
+                        && arg != Names.UNKNOWN_TYPE
+                ) {
+                    out.println("error: argument type error : subroutine '" + name + "' in class '"
+                            + className + "' cannot be used");
+                    out.print("\n  required: ");
+                    printExprList(list, out);
+                    out.print("\n  found: ");
+                    printExprList(found, out);
+                    out.println(location);
+                    throw new CompileError();
                 }
             }
         }
     }
 
-    // prints expression lists for solveParamCheckList
-    private void  printExprList(List<String> list, int n){
-        for (int j = n; j < list.size(); j++) {
-            if (j > n){ System.out.print(", ");}
-            System.out.print( list.get(j));
+    // prints the names of the types of expression lists for solveParamCheck
+    private void  printExprList(int[] list, PrintStream out){
+        for (int j = 0; j < list.length; j++) {
+            if (j > 0){ out.print(", ");}
+            out.print(Names.name(list[j]));
         }
     }
 
-    // resolves object variable calls and adds them to file
+    // resolves object variable calls, filling in the pushes left for them, and writes each file once it is complete
     public void resolveObjectVarRefList(){
 
         for(List<Object> v: objectVarRefList){
             // find its symbol
-            Symbol s = classSymbolTables.get(programSymbolTable.getSymbol((String)v.get(0)).getIndex()).getSymbol((String)v.get(1));
-            int index = s.getIndex();
-            String segment = s.getKind();
-            // create a string for its file entry
-            String fileIn = "push " + segment.toLowerCase() + " " + index;
-            CodeGenerator.insertLine(fileIn, (File)v.get(2), (int)v.get(3)+1);
+            Symbol s = classTable(Names.id((String)v.get(0))).getSymbol(Names.id((String)v.get(1)));
+            VMFile vmFile = (VMFile)v.get(2);
+            // a field of another class is pushed through the object, so is left for the optimiser to work out
+            VMCode.Segment seg = s.getKind() == Symbol.SymbolKind.FIELD ? VMCode.Segment.FIELD
+                    : s.getKind().getSegment();
+            if (vmFile.resolve((VMCode)v.get(3), (int)v.get(4), seg, s.getIndex())) {
+                vmFile.write(out);
+            }
         }
     }
 
@@ -586,24 +704,27 @@ public class SemanticAnalyser {
 
     public void setCurrentClass(String currentClass) {
         this.currentClass = currentClass;
+        this.currentClassId = Names.id(currentClass);
+        this.classLine = currentLine;
 
         // add class to program's class symbol table
         Symbol symbol = new Symbol();
         // set the kind
-        symbol.setKind("class");
+        symbol.setKind(Symbol.SymbolKind.CLASS);
         // set the index of the symbol
-        symbol.setIndex(programSymbolTable.getCount("class"));
+        symbol.setIndex(programSymbolTable.getCount(Symbol.SymbolKind.CLASS));
         //increment the count on the symbol table
-        programSymbolTable.incrementCount("class");
+        programSymbolTable.incrementCount(Symbol.SymbolKind.CLASS);
         // set the symbol type
-        symbol.setType(currentClass);
+        symbol.setType(currentClassId);
         // set the symbol name
-        symbol.setName(currentClass);
+        symbol.setName(currentClassId);
 
         // make sure class of same name does not already exist within the program
-        if (programSymbolTable.lookUp(currentClass)) {
-            System.out.println("error: Class '" + currentClass +"' already exists");
-            System.exit(0);
+        if (programSymbolTable.lookUp(currentClassId)) {
+            out.println("error: Class '" + currentClass +"' already exists");
+            out.println("  line " + currentLine);
+            throw new CompileError();
         }
 
 
@@ -611,6 +732,14 @@ public class SemanticAnalyser {
         programSymbolTable.insert(symbol);
     }
 
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    public void setCurrentLine(int currentLine) {
+        this.currentLine = currentLine;
+    }
+
     public void setCurrentSubroutine(Symbol currentSubroutine) {
         this.currentSubroutine = currentSubroutine;
     }
@@ -654,61 +783,46 @@ public class SemanticAnalyser {
         return currentClass;
     }
 
+    public int getCurrentClassId() {
+        return currentClassId;
+    }
+
     public String getCurrentSubroutine(){
         return currentSubroutine.getName();
     }
 
+    public int getCurrentLine() {
+        return currentLine;
+    }
+
     public String getCurrentReturnType() {
         return currentReturnType;
     }
 
-    // returns the type of an identifier if symbol with matching name exists within a class scope
-    public String getIdType(String id){
-        String s = null;
-       if(idExistsInScope(id)) {
-           for(SymbolTable st:symbolTableList) {
-               if (st.lookUp(id)) {
-                   s = st.getSymbol(id).getType();
-               }
-           }
-       }
-       return s;
+    // returns the symbol table of the class scope of the given class, or null if there is no such class
+    public SymbolTable getClassTable(String className) {
+        return classTable(Names.id(className));
     }
 
-    // returns the type of an identifier if symbol with matching name exists within a class scope
-    public String getIdKind(String id){
-        String s = null;
-        if(idExistsInScope(id)) {
-            for(SymbolTable st:symbolTableList) {
-                if (st.lookUp(id)) {
-                    s = st.getSymbol(id).getKind();
-                }
-            }
-        }
-        return s;
+    // returns the names of the classes the given class refers to
+    public Set<String> getDependencies(String className) {
+        return dependencies.getOrDefault(className, new TreeSet<String>());
     }
 
     // returns the type of an identifier if symbol with matching name exists within a class scope
-    public int getIdIndex(String id){
-        int s = 0;
-        if(idExistsInScope(id)) {
-            for(SymbolTable st:symbolTableList) {
-                if (st.lookUp(id)) {
-                    s = st.getSymbol(id).getIndex();
-                }
-            }
-        }
-        return s;
+    public String getIdType(int id){
+        Symbol s = resolve(id);
+        return s == null ? null : s.getType();
     }
 
     // returns total field variable in current class
     public int getClassFieldCount() {
-        return symbolTableList.get(symbolTableList.size()-1).getCount("field");
+        return symbolTableList.get(symbolTableList.size()-1).getCount(Symbol.SymbolKind.FIELD);
     }
 
     // returns var count for current subroutine
     public int getSubrVarCount(){
-        return symbolTableList.get(0).getCount("var");
+        return symbolTableList.get(0).getCount(Symbol.SymbolKind.VARIABLE);
     }
 
     public String getLhsType() {
@@ -0,0 +1,446 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/* analyses the syntax tree of a class once it has been parsed, walking it in the order it was read. Each message is
+** printed with the line of the token the parser would have read last when it was found, so messages are the same as
+** when analysis was made while parsing. The symbols names resolve to, the number of locals of each subroutine and the
+** number of arguments of each call are noted on the tree for code generation
+*/
+public class SemanticPass {
+
+    SemanticAnalyser analyser;
+    SyntaxTree tree = null;
+    PrintStream out = System.out;
+    /* set once an operator making an expression boolean has been met. It is shared by nested expressions, so an
+    ** operator in an argument of a call counts towards the expression around it
+    */
+    boolean metOperator = false;
+
+    public SemanticPass(SemanticAnalyser analyser) {
+        this.analyser = analyser;
+    }
+
+    public void setAnalyser(SemanticAnalyser analyser) {
+        this.analyser = analyser;
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    public void analyse(SyntaxTree tree) {
+        this.tree = tree;
+        int name = tree.token(0);
+        at(name);
+        analyser.setCurrentClass(tree.lexeme(name));
+        for (int member = tree.firstChild(0); member != SyntaxTree.NONE; member = tree.next(member)) {
+            if (tree.kind(member) == SyntaxTree.Kind.CLASS_VAR) {
+                classVarDeclar(member);
+            } else {
+                subroutineDeclar(member);
+            }
+        }
+        tree.setValue(0, analyser.getClassFieldCount());
+        at(tree.end(0));
+        this.tree = null;
+    }
+
+    // messages are given the line of token i
+    private void at(int i) {
+        analyser.setCurrentLine(tree.line(i));
+    }
+
+    // checks later that a type which is the name of a class exists
+    private void type(int i) {
+        if (tree.type(i) == Token.TokenType.IDENTIFIER) {
+            analyser.addToTypeCheckList(tree.id(i));
+        }
+    }
+
+    private void error(String msg, String symbol, int line) {
+        out.println(msg);
+        out.println("  symbol: " + symbol);
+        out.println("  location: subroutine " + analyser.getCurrentSubroutine()
+                + "\n  class " + analyser.getCurrentClass() + "\n  line " + line);
+        throw new CompileError();
+    }
+
+    // class grammar
+
+    private void classVarDeclar(int node) {
+        int first = tree.token(node);
+        Symbol.SymbolKind kind = tree.lexeme(first).compareTo("static") == 0
+                ? Symbol.SymbolKind.STATIC : Symbol.SymbolKind.FIELD;
+        type(first + 1);
+        for (int name = first + 2; name < tree.end(node); name += 2) {
+            at(name);
+            analyser.newSymbol(kind, new int[] {tree.id(first + 1), tree.id(name)});
+        }
+    }
+
+    private void subroutineDeclar(int node) {
+        int first = tree.token(node);
+        int returnType = first + 1, name = first + 2;
+        type(returnType);
+        analyser.setCurrentReturnType(tree.lexeme(returnType));
+        at(name);
+        analyser.newSymbol(Symbol.SymbolKind.SUBROUTINE, new int[] {tree.id(returnType), tree.id(name)});
+        analyser.newSymbolTable(); // create symbol table for current scope
+        if (tree.lexeme(first).compareTo("method") == 0) {
+            // add object of method to symbol table
+            at(name + 1);
+            analyser.newSymbol(Symbol.SymbolKind.ARGUMENT, new int[] {analyser.getCurrentClassId(), Token.THIS});
+        }
+
+        int child = tree.firstChild(node);
+        List<Integer> paramTypesList = null;
+        for (; tree.kind(child) == SyntaxTree.Kind.PARAMETER; child = tree.next(child)) {
+            int param = tree.token(child);
+            type(param);
+            if (paramTypesList == null) {
+                paramTypesList = new ArrayList<Integer>();
+            }
+            paramTypesList.add(tree.id(param));
+            at(param + 1);
+            analyser.newSymbol(Symbol.SymbolKind.ARGUMENT, new int[] {tree.id(param), tree.id(param + 1)});
+            analyser.markVarInitialised(tree.id(param + 1)); // parameters initialised already in calling function
+        }
+        if (paramTypesList != null) {
+            analyser.addParamTypesList(paramTypesList);
+        }
+
+        analyser.setIsValueReturned(false);
+        statements(child);
+        int end = tree.end(child);
+        at(end);
+        // check if a value has been returned
+        if (!analyser.getIsValueReturned() && analyser.getCurrentSubroutine().compareTo("new") != 0
+                && analyser.getCurrentReturnType().compareTo("void") != 0) {
+            out.println("warning: expecting return value: control may reach the end of non void function");
+            out.println("  location: subroutine " + analyser.getCurrentSubroutine() + "\n  class "
+                    + analyser.getCurrentClass() + "\n  line " + tree.line(end));
+        }
+        tree.setValue(node, analyser.getSubrVarCount());
+        // delete symbol table as it is no longer needed
+        analyser.removeSymbolTable();
+    }
+
+    // statement grammar
+
+    private void statements(int node) {
+        for (int stmt = tree.firstChild(node); stmt != SyntaxTree.NONE; stmt = tree.next(stmt)) {
+            statement(stmt);
+        }
+    }
+
+    private void statement(int node) {
+        // check if this code is reachable by checking whether value has been returned
+        if (tree.kind(node) != SyntaxTree.Kind.RETURN) {
+            at(tree.token(node) - 1);
+            analyser.checkIfValueReturned();
+        }
+        switch (tree.kind(node)) {
+            case VAR -> varDeclarStmt(node);
+            case LET -> letStmt(node);
+            case IF -> ifStmt(node);
+            case WHILE -> whileStmt(node);
+            case DO -> doStmt(node);
+            case RETURN -> returnStmt(node);
+            default -> throw new IllegalStateException(tree.kind(node).name());
+        }
+    }
+
+    private void varDeclarStmt(int node) {
+        int first = tree.token(node);
+        type(first + 1);
+        for (int name = first + 2; name < tree.end(node); name += 2) {
+            at(name);
+            analyser.newSymbol(Symbol.SymbolKind.VARIABLE, new int[] {tree.id(first + 1), tree.id(name)});
+        }
+    }
+
+    private void letStmt(int node) {
+        analyser.setIsAssignment(true);
+        int name = tree.token(node) + 1;
+        int id = tree.id(name);
+        at(name);
+        analyser.checkVarDeclared(Token.NONE, id, true); // check if variable has been declared
+        analyser.markVarInitialised(id); // set that variable has been initialised
+        Symbol target = analyser.resolve(id);
+        tree.setSymbol(node, target);
+        if (target.getType().compareTo("boolean") == 0) {
+            analyser.setisBooleanStmt(true);// if it is boolean then the expression must also be boolean
+        }
+        int value = tree.firstChild(node);
+        if (tree.next(value) != SyntaxTree.NONE) {
+            analyser.setIsArrayIndex(true);
+            expression(value);
+            analyser.setIsArrayIndex(false);
+            value = tree.next(value);
+        } else { // type can't be array if array index is being accessed
+            analyser.setLhsType(target.getType()); // set the lhs type
+            if (analyser.getIsBooleanStmt()) {
+                analyser.setLhsType("-1");
+            }
+        }
+        expression(value);
+        // reset lhs type
+        analyser.setLhsType("-1");
+        analyser.setIsAssignment(false);
+        analyser.setisBooleanStmt(false);
+    }
+
+    private void ifStmt(int node) {
+        analyser.setUnreachableReturn(true); // returns might be unreachable
+        analyser.setLhsType("-1");
+        int condition = tree.firstChild(node);
+        analyser.setisBooleanStmt(true);// expression for if statement must be boolean
+        expression(condition);
+        analyser.setisBooleanStmt(false);
+        analyser.setLhsType("-1");
+        int then = tree.next(condition);
+        statements(then);
+        analyser.setUnreachableReturn(false); //returns are no longer unreachable
+        if (tree.next(then) != SyntaxTree.NONE) {
+            statements(tree.next(then));
+        }
+    }
+
+    private void whileStmt(int node) {
+        analyser.setUnreachableReturn(true); // returns might not be reached within the loop
+        analyser.setLhsType("-1");
+        int condition = tree.firstChild(node);
+        analyser.setisBooleanStmt(true);// expression for while statement must be boolean
+        expression(condition);
+        analyser.setisBooleanStmt(false);
+        analyser.setLhsType("-1");
+        statements(tree.next(condition));
+        analyser.setUnreachableReturn(false); // returns can now be reached again
+    }
+
+    private void doStmt(int node) {
+        at(tree.token(node));
+        analyser.checkIfValueReturned();
+        int call = tree.firstChild(node);
+        int first = tree.token(call);
+        int className;
+        if (tree.lexeme(first + 1).compareTo(".") == 0) {
+            // find out if call is being made direct to class or by object
+            Symbol object = analyser.resolve(tree.id(first));
+            tree.setSymbol(call, object);
+            className = object != null ? object.getTypeId() : tree.id(first);
+            first += 2;
+        } else { // if call is to subroutine within this class
+            className = analyser.getCurrentClassId();
+        }
+        at(first);
+        // check if subroutine exists now or later
+        analyser.checkSubrDeclared(className, tree.id(first));
+        arguments(call, className, tree.id(first));
+    }
+
+    // checks the arguments of a call, and notes how many it has
+    private void arguments(int call, int className, int funcName) {
+        List<String> types = new ArrayList<String>();
+        for (int arg = tree.firstChild(call); arg != SyntaxTree.NONE; arg = tree.next(arg)) {
+            analyser.setLhsType("-1");
+            analyser.setIsExpressionList(true);
+            expression(arg);
+            int last = tree.end(arg);
+            if (analyser.getLhsType().compareTo("-1") != 0) {
+                types.add(analyser.getLhsType()); // add type of expression to expression list
+            } else if (tree.type(last) == Token.TokenType.INTEGER_CONST) {
+                types.add("int");
+            } else if (tree.type(last) == Token.TokenType.STRING_LIT) {
+                types.add("String");
+            } else if (tree.lexeme(last).compareTo("true") == 0 || tree.lexeme(last).compareTo("false") == 0) {
+                types.add("boolean");
+            } else if (tree.lexeme(last).compareTo("null") == 0) {
+                types.add("null");
+            }
+        }
+        analyser.setIsExpressionList(false);
+        analyser.addToParamCheckList(className, funcName, types);
+        tree.setValue(call, types.size());
+    }
+
+    private void returnStmt(int node) {
+        // value has been returned so set valueReturned to true
+        analyser.setIsValueReturned(true);
+        analyser.setIsReturn(true);
+        analyser.setLhsType("-1");
+        int value = tree.firstChild(node);
+        if (value != SyntaxTree.NONE) {
+            // make sure the current return type is not void
+            at(tree.token(node));
+            analyser.checkReturnVoid(tree.lexeme(tree.token(node) + 1));
+            expression(value);
+        }
+        analyser.setIsReturn(false);
+        analyser.setLhsType("-1");
+    }
+
+    // expression grammar
+
+    private void expression(int node) {
+        metOperator = false;
+        int child = tree.firstChild(node);
+        visit(child);
+        if (tree.next(child) != SyntaxTree.NONE) {
+            metOperator = true;
+            operands(child);
+            // ensure that the expression is boolean if there are no comparators
+        } else if (analyser.getIsBooleanStmt() && !metOperator) {
+            int last = tree.end(node);
+            String type = analyser.getIdType(tree.id(last));
+            boolean isCorrectType = false;
+            if (type != null) {
+                isCorrectType = (type.compareTo("boolean") == 0);
+            } else if (tree.lexeme(last).compareTo("true") == 0 || tree.lexeme(last).compareTo("false") == 0) {
+                isCorrectType = true;
+                type = tree.type(last).name();
+            } else {
+                type = tree.type(last).name();
+            }
+            if (!isCorrectType) {
+                error("error: incompatible types: '" + type.toLowerCase() + "' cannot be converted to boolean ",
+                        tree.lexeme(last), tree.line(last));
+            }
+        }
+    }
+
+    // visits the operands after the first of an & | or = > < expression, which make it boolean
+    private void operands(int first) {
+        for (int prev = first, child = tree.next(first); child != SyntaxTree.NONE; prev = child,
+                child = tree.next(child)) {
+            // aray indices are of type int. Comparators make the expression boolean
+            if (analyser.isArrayIndex()) {
+                error("error: incompatible types: array index must be of type int ", tree.lexeme(tree.end(prev) + 1),
+                        tree.line(tree.end(prev)));
+            }
+            analyser.setLhsType("-1"); // allow for comparison of different types in boolean statements
+            visit(child);
+        }
+    }
+
+    private void visit(int node) {
+        switch (tree.kind(node)) {
+            case RELATIONAL -> {
+                int first = tree.firstChild(node);
+                visit(first);
+                metOperator = true;
+                operands(first);
+            }
+            case ARITHMETIC, TERM, UNARY -> {
+                for (int child = tree.firstChild(node); child != SyntaxTree.NONE; child = tree.next(child)) {
+                    visit(child);
+                }
+            }
+            case PAREN -> expression(tree.firstChild(node));
+            case INTEGER -> {
+                at(tree.token(node));
+                analyser.checkOperandTypes("int", tree.lexeme(tree.token(node)));
+            }
+            case STRING -> {
+                at(tree.token(node));
+                analyser.checkOperandTypes("String", tree.lexeme(tree.token(node)));
+            }
+            case KEYWORD -> keyword(node);
+            case VARIABLE -> variable(node);
+            case MEMBER -> member(node);
+            case CALL -> call(node);
+            default -> throw new IllegalStateException(tree.kind(node).name());
+        }
+    }
+
+    private void keyword(int node) {
+        String lexeme = tree.lexeme(tree.token(node));
+        if (lexeme.compareTo("true") == 0 || lexeme.compareTo("false") == 0) {
+            at(tree.token(node));
+            analyser.checkOperandTypes("boolean", lexeme);
+        } else if (lexeme.compareTo("this") == 0 && analyser.getLhsType().compareTo("-1") == 0) {
+            analyser.setLhsType(analyser.getCurrentClass());
+        }
+    }
+
+    // an index is of type int
+    private void index(int node) {
+        analyser.setIsArrayIndex(true);
+        expression(node);
+        analyser.setIsArrayIndex(false);
+    }
+
+    private void variable(int node) {
+        int name = tree.token(node);
+        int id = tree.id(name);
+        at(name);
+        // given that it is a variable, check if the operand has been declared within scope
+        analyser.checkVarDeclared(Token.NONE, id, true);
+        tree.setSymbol(node, analyser.resolve(id));
+        if (tree.firstChild(node) != SyntaxTree.NONE) {
+            index(tree.firstChild(node));
+            return;
+        }
+        // only check type and initialisation if it's not an array
+        analyser.checkType(id, Token.NONE, true);
+        // set lhs type if not already set
+        if (analyser.getLhsType().compareTo("-1") == 0 && !analyser.isArrayIndex()) {
+            analyser.setLhsType(analyser.getIdType(id));
+        }
+        analyser.checkInitialised(id);
+    }
+
+    // resolves the class or object before the '.' of a member or call, returning the id of its class
+    private int qualifier(int node) {
+        int first = tree.token(node);
+        Symbol object = analyser.resolve(tree.id(first));
+        tree.setSymbol(node, object);
+        return object != null ? object.getTypeId() : tree.id(first);
+    }
+
+    /* given that it is a variable not in scope, check for it's existence in given class & check its type. Accessing
+    ** fields in other classes is illegal so error will be issued later
+    */
+    private void member(int node) {
+        int className = qualifier(node);
+        int name = tree.token(node) + 2;
+        List<Object> objectVarRef = new ArrayList<Object>();
+        objectVarRef.add(Names.name(className));
+        objectVarRef.add(tree.lexeme(name));
+        analyser.addToObjectVarRefList(objectVarRef);
+        tree.setReference(node, objectVarRef);
+
+        at(name);
+        analyser.checkVarDeclared(className, tree.id(name), false);
+        if (tree.firstChild(node) == SyntaxTree.NONE) { // only check type if it's not an array
+            analyser.checkType(tree.id(name), className, true);
+        } else {
+            index(tree.firstChild(node));
+        }
+    }
+
+    private void call(int node) {
+        int first = tree.token(node);
+        int className, funcName;
+        boolean inScope;
+        if (tree.lexeme(first + 1).compareTo(".") == 0) {
+            className = qualifier(node);
+            funcName = tree.id(first + 2);
+            inScope = false;
+            at(first + 2);
+        } else { // it is a subroutine within current class
+            className = analyser.getCurrentClassId();
+            funcName = tree.id(first);
+            inScope = true;
+            at(first);
+        }
+        analyser.checkSubrDeclared(className, funcName);
+        analyser.checkType(funcName, className, false);
+        if (analyser.getLhsType().compareTo("-1") == 0) { // set lhs type if not already set
+            // the return type of a subroutine of another class is unknown
+            analyser.setLhsType(inScope ? analyser.getIdType(funcName) : "-2");
+        }
+        arguments(node, className, funcName);
+    }
+}
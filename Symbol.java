@@ -1,49 +1,50 @@
-import java.util.ArrayList;
-import java.util.List;
-
 // represents a symbol in the symbol table
 public class Symbol {
 
-    public enum SymbolKind {STATIC, FIELD, ARGUMENT, VARIABLE, SUBROUTINE, CLASS}
-    private String name;
-    // data type of symbol or return type for subroutine
-    private String type;
+    // kinds of symbol, with the segment a variable of each kind is pushed from and popped to within its own class
+    public enum SymbolKind {
+        STATIC(VMCode.Segment.STATIC), FIELD(VMCode.Segment.THIS), ARGUMENT(VMCode.Segment.ARGUMENT),
+        VARIABLE(VMCode.Segment.LOCAL), SUBROUTINE(null), CLASS(null);
+
+        private final VMCode.Segment segment;
+
+        SymbolKind(VMCode.Segment segment) {
+            this.segment = segment;
+        }
+
+        // returns the segment of a variable of this kind, or null for a subroutine or class
+        public VMCode.Segment getSegment() {
+            return segment;
+        }
+    }
+
+    // ids in Names of the name, and of the data type of symbol or return type for subroutine
+    private int name;
+    private int type;
     private SymbolKind kind;
     private int index;
     // boolean to represent whether the symbol has been initialised
     private boolean initialised = false;
-    // list for parameter types of a subroutine
-    private List<String> paramTypes = null;
+    // ids of the parameter types of a subroutine
+    private int[] paramTypes = null;
 
-    // set the name of the symbol
-    public void setName(String name) {
+    // set the id of the name of the symbol
+    public void setName(int name) {
         this.name = name;
     }
 
-    // set the symbol type
-    public void setType(String type) {
+    // set the id of the symbol type
+    public void setType(int type) {
         this.type = type;
     }
 
     // sets the symbol kind
-    public void setKind(String kind) {
-        if (kind.compareTo("static") == 0) {
-            this.kind = SymbolKind.STATIC;
-        } else if (kind.compareTo("field") == 0) {
-            this.kind = SymbolKind.FIELD;
-        } else if (kind.compareTo("arg") == 0) {
-            this.kind = SymbolKind.ARGUMENT;
-        } else if (kind.compareTo("var") == 0) {
-            this.kind = SymbolKind.VARIABLE;
-        } else if (kind.compareTo("subr") == 0) {
-            this.kind = SymbolKind.SUBROUTINE;
-        } else if (kind.compareTo("class") == 0) {
-            this.kind = SymbolKind.CLASS;
-        }
-
+    public void setKind(SymbolKind kind) {
+        this.kind = kind;
     }
+
     // sets the parameter types list of the symbol
-    public void setParamTypes(List<String> paramTypes) {
+    public void setParamTypes(int[] paramTypes) {
         this.paramTypes = paramTypes;
     }
 
@@ -59,17 +60,27 @@ public class Symbol {
 
     // returns name of symbol
     public String getName() {
+        return Names.name(name);
+    }
+
+    // returns the id of the name of symbol
+    public int getNameId() {
         return name;
     }
 
     // returns type of symbol
     public String getType() {
+        return Names.name(type);
+    }
+
+    // returns the id of the type of symbol
+    public int getTypeId() {
         return type;
     }
 
     // returns kind of symbol
-    public String getKind() {
-        return kind.name();
+    public SymbolKind getKind() {
+        return kind;
     }
 
     // returns index
@@ -78,7 +89,7 @@ public class Symbol {
     }
 
     // returns param types
-    public List<String> getParamTypes() {
+    public int[] getParamTypes() {
         return paramTypes;
     }
 
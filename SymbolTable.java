@@ -4,102 +4,77 @@ import java.util.List;
 // Symbol Table stores Symbols for a single scope
 public class SymbolTable {
     private List<Symbol> symbolList;
+    /* open addressing hash table of the symbols by the id of their name, with linear probing. Only the first symbol
+    ** inserted with a name is kept in it, as that is the one a lookup finds. Kept at most half full
+    */
+    private Symbol[] slots = new Symbol[16];
+    private int slotsUsed = 0;
+    // 32 - log2 of the number of slots, so the top bits of the hash of a name pick its slot
+    private int shift = 28;
 
-    // counts of symbols of certain type. Hold current number -1
-    private int staticCount, fieldCount, argCount, varCount, subrCount, classCount;
+    // counts of symbols of each kind, indexed by the ordinal of the kind
+    private int[] counts = new int[Symbol.SymbolKind.values().length];
 
     public SymbolTable(){
         symbolList = new ArrayList<Symbol>();
-        staticCount = 0;
-        fieldCount = 0;
-        argCount = 0;
-        varCount = 0;
-        subrCount = 0;
-        classCount = 0;
     }
 
     // appends symbol onto bottom of table
     public void insert(Symbol symbol) {
         symbolList.add(symbol);
-    }
-
-    // returns true if symbol is in table, false if not
-    public boolean lookUp(String symbolString) {
-        for (Symbol s:symbolList) {
-            if (symbolString.compareTo(s.getName()) == 0) {
-                return true;
+        int slot = slot(symbol.getNameId());
+        if (slots[slot] == null) {
+            slots[slot] = symbol;
+            if (++slotsUsed * 2 > slots.length) {
+                grow();
             }
         }
-        return false;
     }
 
-    // sets the value 'initialised' to true for given symbol
-    public void setSymInitialised(String symbolString) {
-        for (Symbol s:symbolList) {
-            if (symbolString.compareTo(s.getName()) == 0) {
-                s.setInitialised(true);
-            }
+    // returns the slot holding the symbol with the given name id, or the empty slot it would go in
+    private int slot(int name) {
+        int mask = slots.length - 1;
+        int slot = name * 0x9E3779B9 >>> shift;
+        while (slots[slot] != null && slots[slot].getNameId() != name) {
+            slot = (slot + 1) & mask;
         }
+        return slot;
     }
 
-    // increments one of the counts for symbol types depending on character given
-    public void incrementCount (String s) {
-        if(s.compareTo("static") == 0){
-            ++staticCount;
-        } else if (s.compareTo("field") == 0){
-            ++fieldCount;
-        } else if (s.compareTo("arg") == 0){
-            ++argCount;
-        } else if (s.compareTo("var") == 0){
-            ++varCount;
-        } else if (s.compareTo("subr") == 0){
-            ++subrCount;
-        } else if (s.compareTo("class") == 0){
-            ++classCount;
+    // doubles the number of slots, putting each symbol back in its new slot
+    private void grow() {
+        Symbol[] old = slots;
+        slots = new Symbol[old.length * 2];
+        shift--;
+        for (Symbol s : old) {
+            if (s != null) {
+                slots[slot(s.getNameId())] = s;
+            }
         }
     }
 
-    // returns current value of selected counter
-    public int getCount(String s) {
-        if (s.compareTo("static") == 0){
-            return staticCount;
-        } else if (s.compareTo("field") == 0){
-            return fieldCount;
-        } else if (s.compareTo("arg") == 0){
-            return argCount;
-        } else if (s.compareTo("var") == 0){
-            return varCount;
-        } else if (s.compareTo("subr") == 0){
-           return subrCount;
-        } else if (s.compareTo("class") == 0){
-            return classCount;
-        }
-
-        return 0;
+    // returns true if a symbol with the given name id is in table, false if not
+    public boolean lookUp(int name) {
+        return getSymbol(name) != null;
     }
 
-    // returns symbol of given name
-    public Symbol getSymbol(String symbolString) {
-        for (Symbol s:symbolList) {
-            if (symbolString.compareTo(s.getName()) == 0) {
-                return s;
+    // increments the count of symbols of the given kind
+    public void incrementCount(Symbol.SymbolKind kind) {
+        ++counts[kind.ordinal()];
+    }
 
-            }
-        }
-        return null;
+    // returns current value of the count of symbols of the given kind
+    public int getCount(Symbol.SymbolKind kind) {
+        return counts[kind.ordinal()];
     }
 
-    public int getIndex(String symbolString) {
-        return getSymbol(symbolString).getIndex();
+    // returns symbol with the given name id, or null if there is none
+    public Symbol getSymbol(int name) {
+        return slots[slot(name)];
     }
 
-    // returns true if given symbol within scope has been initialised
-    public boolean symIsInitialised(String symbolString) {
-        for (Symbol s:symbolList) {
-            if (symbolString.compareTo(s.getName()) == 0) {
-                return s.isInitialised();
-            }
-        }
-        return false;
+    // returns all symbols in the order they were inserted
+    public List<Symbol> getSymbols() {
+        return symbolList;
     }
 }
\ No newline at end of file
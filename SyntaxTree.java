@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* the syntax tree of a class, held as parallel arrays of nodes rather than objects, along with the tokens it was parsed
+** from in the order they were read. A token is kept as its id in Names and its line, without a Token object, and only
+** the lexemes of constants and other tokens which aren't names are copied into the tree. A node has a kind, its main
+** token, its last token, its first child and the next child of its parent, each as an index. The class is node 0.
+** Operators and names are not nodes of their own: the operator between two operands is the token after the first, and
+** the names a node declares or refers to are found at fixed places after its main token. The semantic pass notes on
+** nodes what code generation needs from it, so the passes can run one after the other
+**
+** main token of each kind of node, and its children:
+**   CLASS       name of the class                 CLASS_VAR and SUBROUTINE nodes
+**   CLASS_VAR   static or field, then the type and names separated by commas
+**   SUBROUTINE  constructor, function or method, then the return type and name. PARAMETER nodes, then its body
+**   PARAMETER   type, then the name
+**   STATEMENTS  {                                 statements
+**   VAR         var, then the type and names separated by commas
+**   LET         let, then the name                the index if there is one, then the value
+**   IF          if                                the condition and STATEMENTS, then STATEMENTS for else if any
+**   WHILE       while                             the condition and STATEMENTS
+**   DO          do                                the CALL
+**   RETURN      return                            the value if there is one
+**   EXPRESSION  its first token                   operands separated by & or |
+**   RELATIONAL, ARITHMETIC, TERM                  two or more operands separated by = > <, + - or * /
+**               the first operator
+**   UNARY       - or ~                            the operand
+**   PAREN       (                                 the EXPRESSION
+**   INTEGER, STRING, KEYWORD                      nothing. A KEYWORD is true, false, null, this, or any other
+**               the constant                      token which isn't an operand
+**   VARIABLE    the name                          the index if there is one
+**   MEMBER      the class or object, then . and the name of the variable. The index if there is one
+**   CALL        the name, or the class or object then . and the name. The arguments
+*/
+public class SyntaxTree {
+    public enum Kind {CLASS, CLASS_VAR, SUBROUTINE, PARAMETER, STATEMENTS, VAR, LET, IF, WHILE, DO, RETURN, EXPRESSION,
+        RELATIONAL, ARITHMETIC, TERM, UNARY, PAREN, INTEGER, STRING, KEYWORD, VARIABLE, MEMBER, CALL}
+
+    // index of no node, for a node without children or without a next child
+    public static final int NONE = -1;
+    private static final Kind[] KINDS = Kind.values();
+
+    // id in Names of each keyword, symbol or name, or ~n for the n'th other token
+    private int[] codes = new int[256];
+    private int tokenCount = 0;
+    // the lines tokens were read on, as the first token read on each line and its line number
+    private int[] lineStarts = new int[64];
+    private int[] lines = new int[64];
+    private int lineCount = 0;
+    // lexemes of the tokens without an id, one after another, with where each ends and its type
+    private char[] text = new char[256];
+    private int[] literalEnds = new int[16];
+    private byte[] literalTypes = new byte[16];
+    private int literalCount = 0;
+    private static final Token.TokenType[] TYPES = Token.TokenType.values();
+
+    private byte[] kinds = new byte[64];
+    private int[] mainTokens = new int[64];
+    private int[] ends = new int[64];
+    private int[] firstChildren = new int[64];
+    private int[] nextChildren = new int[64];
+    private int size = 0;
+
+    /* noted by the parser and the semantic pass: the value of an INTEGER, the number of locals of a SUBROUTINE, the
+    ** number of fields of the CLASS, the number of arguments of a CALL as counted by the semantic analyser, and the
+    ** reference a MEMBER is resolved through
+    */
+    private int[] values = new int[64];
+    // symbol a LET, VARIABLE, MEMBER or CALL resolved to, or null for a MEMBER or CALL through a class
+    private Symbol[] symbols = new Symbol[64];
+    // variables of other classes whose pushes are resolved once every class is parsed {class, name, ...}
+    private List<List<Object>> references = new ArrayList<List<Object>>();
+
+    // adds a token read on the given line and returns its index
+    public int addToken(Token token, int line) {
+        if (tokenCount == codes.length) {
+            codes = Arrays.copyOf(codes, tokenCount * 2);
+        }
+        if (lineCount == 0 || lines[lineCount - 1] != line) {
+            if (lineCount == lines.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lines = Arrays.copyOf(lines, lineCount * 2);
+            }
+            lineStarts[lineCount] = tokenCount;
+            lines[lineCount++] = line;
+        }
+        boolean named = token.getId() != Token.NONE && (token.getKind() != Token.NONE
+                || token.getType() == Token.TokenType.IDENTIFIER);
+        codes[tokenCount] = named ? token.getId() : ~addLiteral(token);
+        return tokenCount++;
+    }
+
+    // copies the lexeme and type of a token without an id, returning its number
+    private int addLiteral(Token token) {
+        String lexeme = token.getLexeme();
+        int start = literalCount == 0 ? 0 : literalEnds[literalCount - 1];
+        if (start + lexeme.length() > text.length) {
+            text = Arrays.copyOf(text, Math.max(start + lexeme.length(), text.length * 2));
+        }
+        lexeme.getChars(0, lexeme.length(), text, start);
+        if (literalCount == literalEnds.length) {
+            literalEnds = Arrays.copyOf(literalEnds, literalCount * 2);
+            literalTypes = Arrays.copyOf(literalTypes, literalCount * 2);
+        }
+        literalEnds[literalCount] = start + lexeme.length();
+        literalTypes[literalCount] = (byte) token.getType().ordinal();
+        return literalCount++;
+    }
+
+    // adds a node without children whose main and last token are the given token, and returns its index
+    public int add(Kind kind, int token) {
+        if (size == kinds.length) {
+            int length = size * 2;
+            kinds = Arrays.copyOf(kinds, length);
+            mainTokens = Arrays.copyOf(mainTokens, length);
+            ends = Arrays.copyOf(ends, length);
+            firstChildren = Arrays.copyOf(firstChildren, length);
+            nextChildren = Arrays.copyOf(nextChildren, length);
+            values = Arrays.copyOf(values, length);
+            symbols = Arrays.copyOf(symbols, length);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        mainTokens[size] = token;
+        ends[size] = token;
+        firstChildren[size] = NONE;
+        nextChildren[size] = NONE;
+        return size++;
+    }
+
+    /* adds a node as the last child of another. Until the parent is closed its children are kept last first, so that
+    ** adding one needs no more than the first child
+    */
+    public void addChild(int parent, int child) {
+        nextChildren[child] = firstChildren[parent];
+        firstChildren[parent] = child;
+    }
+
+    // sets the index of the last token of a node once all of its children have been added, putting them in order
+    public void close(int node, int end) {
+        ends[node] = end;
+        int previous = NONE;
+        for (int child = firstChildren[node]; child != NONE; ) {
+            int next = nextChildren[child];
+            nextChildren[child] = previous;
+            previous = child;
+            child = next;
+        }
+        firstChildren[node] = previous;
+    }
+
+    public void setValue(int node, int value) {
+        values[node] = value;
+    }
+
+    public void setSymbol(int node, Symbol symbol) {
+        symbols[node] = symbol;
+    }
+
+    // notes the reference a MEMBER is resolved through
+    public void setReference(int node, List<Object> reference) {
+        values[node] = references.size();
+        references.add(reference);
+    }
+
+    public Kind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    // returns the index of the main token of a node
+    public int token(int node) {
+        return mainTokens[node];
+    }
+
+    // returns the index of the last token of a node
+    public int end(int node) {
+        return ends[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    // returns the next child of the parent of a node, or NONE if it is the last
+    public int next(int node) {
+        return nextChildren[node];
+    }
+
+    public int value(int node) {
+        return values[node];
+    }
+
+    public Symbol symbol(int node) {
+        return symbols[node];
+    }
+
+    public List<Object> reference(int node) {
+        return references.get(values[node]);
+    }
+
+    // returns the number of nodes
+    public int size() {
+        return size;
+    }
+
+    // returns the number of tokens
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    // returns the lexeme of token i. Keywords, symbols and names return their shared string
+    public String lexeme(int i) {
+        int code = codes[i];
+        if (code >= 0) {
+            return Names.name(code);
+        }
+        int start = ~code == 0 ? 0 : literalEnds[~code - 1];
+        return new String(text, start, literalEnds[~code] - start);
+    }
+
+    // returns the id in Names of token i, or Token.NONE if it is not a keyword, symbol or name
+    public int id(int i) {
+        return codes[i] >= 0 ? codes[i] : Token.NONE;
+    }
+
+    // keywords and symbols have their kind code as their id, and every other id is a name
+    public Token.TokenType type(int i) {
+        int code = codes[i];
+        if (code < 0) {
+            return TYPES[literalTypes[~code]];
+        }
+        return code <= Token.GT ? Token.fixed(code).getType() : Token.TokenType.IDENTIFIER;
+    }
+
+    // returns the line token i was read on
+    public int line(int i) {
+        int low = 0, high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= i) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return lines[low];
+    }
+}
@@ -4,16 +4,66 @@ public class Token {
   //list contains types the 7 token types
   public enum TokenType {KEYWORD, SYMBOL, IDENTIFIER, CONSTANT, INTEGER_CONST, STRING_LIT, UNKNOWN}
 
-  //the two parts of a token
-  private String lexeme;
-  private TokenType type;
+  // the fixed lexemes of the language. A keyword or symbol's kind code is its position in KEYWORDS followed by SYMBOLS
+  static final String[] KEYWORDS = new String[] { "class", "constructor", "method", "function", "int", "boolean",
+          "char", "void", "var", "static", "field", "let", "do", "if", "else", "while", "return", "true", "false",
+          "null", "this"};
+  static final String[] SYMBOLS = new String[] { "(", ")", "[", "]", "{", "}", ",", ";", "=", ".", "+", "-", "*",
+          "/", "&", "|", "~", "<", ">"};
+
+  // kind codes of the fixed lexemes, so that later stages can dispatch on an int instead of comparing strings
+  public static final int NONE = -1, CLASS = 0, CONSTRUCTOR = 1, METHOD = 2, FUNCTION = 3, INT = 4, BOOLEAN = 5,
+          CHAR = 6, VOID = 7, VAR = 8, STATIC = 9, FIELD = 10, LET = 11, DO = 12, IF = 13, ELSE = 14, WHILE = 15,
+          RETURN = 16, TRUE = 17, FALSE = 18, NULL = 19, THIS = 20, LPAREN = 21, RPAREN = 22, LBRACKET = 23,
+          RBRACKET = 24, LBRACE = 25, RBRACE = 26, COMMA = 27, SEMICOLON = 28, EQ = 29, DOT = 30, PLUS = 31,
+          MINUS = 32, TIMES = 33, DIVIDE = 34, AND = 35, OR = 36, NOT = 37, LT = 38, GT = 39;
+
+  // lexeme and shared token of each kind code
+  private static final String[] FIXED_LEXEMES = new String[KEYWORDS.length + SYMBOLS.length];
+  private static final Token[] FIXED_TOKENS = new Token[FIXED_LEXEMES.length];
+
+  /* perfect hash table from the first character, last character and length of a fixed lexeme to its kind code.
+  ** The multipliers were chosen so that no two of the 40 lexemes share a slot
+  */
+  private static final int HASH_SIZE = 128;
+  private static final int[] HASH_KINDS = new int[HASH_SIZE];
+  static {
+    java.util.Arrays.fill(HASH_KINDS, NONE);
+    System.arraycopy(KEYWORDS, 0, FIXED_LEXEMES, 0, KEYWORDS.length);
+    System.arraycopy(SYMBOLS, 0, FIXED_LEXEMES, KEYWORDS.length, SYMBOLS.length);
+    for (int kind = 0; kind < FIXED_LEXEMES.length; kind++) {
+      String lexeme = FIXED_LEXEMES[kind];
+      int slot = hash(lexeme.charAt(0), lexeme.charAt(lexeme.length() - 1), lexeme.length());
+      if (HASH_KINDS[slot] != NONE) {
+        throw new IllegalStateException("fixed lexemes '" + lexeme + "' and '" + FIXED_LEXEMES[HASH_KINDS[slot]]
+                + "' share a hash slot");
+      }
+      HASH_KINDS[slot] = kind;
+      FIXED_TOKENS[kind] = new Token(lexeme, kind < KEYWORDS.length ? TokenType.KEYWORD : TokenType.SYMBOL, kind);
+    }
+  }
+
+  // shared token returned once all tokens of a file have been read
+  public static final Token EOF = new Token("end of file", TokenType.UNKNOWN, NONE);
+
+  //the parts of a token
+  private final String lexeme;
+  private final TokenType type;
+  private final int kind;
+  // id of the lexeme in Names if it is a keyword, symbol or name, NONE if not
+  private final int id;
 
   //constructor methods
   public Token(String lexeme) {
+    this(lexeme, nameId(lexeme));
+  }
+  // creates a token for a lexeme whose id has already been found
+  public Token(String lexeme, int id) {
     this.lexeme = lexeme;
+    this.kind = fixedKind(lexeme);
+    this.id = id;
 
-    if (isKeyword(lexeme)) {this.type = TokenType.KEYWORD;}
-    else if (isSymbol(lexeme)) {this.type = TokenType.SYMBOL;}
+    if (kind != NONE) {this.type = FIXED_TOKENS[kind].type;}
     else if (isIdentifier(lexeme)) {this.type = TokenType.IDENTIFIER;}
     else if (isConstant(lexeme)) {this.type = TokenType.CONSTANT;}
     else if (isStringLiteral(lexeme)) {this.type = TokenType.STRING_LIT;}
@@ -22,6 +72,26 @@ public class Token {
   }
   public Token() {
     lexeme = "";
+    type = null;
+    kind = NONE;
+    id = NONE;
+  }
+  private Token(String lexeme, TokenType type, int kind) {
+    this.lexeme = lexeme;
+    this.type = type;
+    this.kind = kind;
+    this.id = kind;
+  }
+
+  // returns the shared token for a lexeme if it is a keyword or symbol, otherwise a new token
+  public static Token of(String lexeme) {
+    int kind = fixedKind(lexeme);
+    return kind != NONE ? FIXED_TOKENS[kind] : new Token(lexeme);
+  }
+
+  // returns the shared token of a keyword or symbol kind code
+  public static Token fixed(int kind) {
+    return FIXED_TOKENS[kind];
   }
 
   public String getLexeme() {
@@ -30,32 +100,77 @@ public class Token {
   public TokenType getType() {
     return type;
   }
-  public void setLexeme( String lexemeString) {
-    lexeme = lexemeString;
+  // returns the kind code of a keyword or symbol, NONE for any other token
+  public int getKind() {
+    return kind;
+  }
+  // returns the id of the lexeme in Names, NONE for a token which is not a keyword, symbol or name
+  public int getId() {
+    return id;
   }
 
-  // set type of token depending on lexeme. Returns true if lexeme is of that type
+  // returns true if a lexeme starting with c is a name, which is given an id as it is lexed
+  public static boolean startsName(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+  }
 
-  static public boolean isKeyword(String lexeme) {
-    String[] keywords = new String[] { "class", "constructor", "method", "function", "int", "boolean", "char", "void",
-            "var", "static", "field", "let", "do", "if", "else", "while", "return", "true",
-            "false", "null", "this"};
-    for (String keyword : keywords) {
-      if (lexeme.compareTo(keyword) == 0) {
-        return true;}
+  // returns the id of a lexeme if it is a keyword, symbol or name, NONE if not
+  private static int nameId(String lexeme) {
+    int kind = fixedKind(lexeme);
+    if (kind != NONE) {
+      return kind;
     }
-    return false;
+    return lexeme.length() > 0 && startsName(lexeme.charAt(0)) ? Names.id(lexeme) : NONE;
   }
 
-  static public boolean isSymbol(String lexeme) {
-    String[] symbols = new String[] { "(", ")", "[", "]", "{", "}", ",", ";", "=", ".", "+", "-", "*", "/", "&", "|",
-            "~", "<", ">"};
-    for (String symbol : symbols) {
-      if (lexeme.compareTo(symbol) == 0) {
-        return true;
+  private static int hash(char first, char last, int length) {
+    return (first * 3 + last * 38 + length) & (HASH_SIZE - 1);
+  }
+
+  // returns the kind code of a lexeme if it is a keyword or symbol, NONE if not
+  public static int fixedKind(String lexeme) {
+    int length = lexeme.length();
+    if (length == 0) {
+      return NONE;
+    }
+    int kind = HASH_KINDS[hash(lexeme.charAt(0), lexeme.charAt(length - 1), length)];
+    return kind != NONE && FIXED_LEXEMES[kind].equals(lexeme) ? kind : NONE;
+  }
+
+  // returns the kind code of the lexeme between start and end of buf if it is a keyword or symbol, NONE if not
+  public static int fixedKind(char[] buf, int start, int end) {
+    int length = end - start;
+    int kind = HASH_KINDS[hash(buf[start], buf[end - 1], length)];
+    if (kind == NONE) {
+      return NONE;
+    }
+    String lexeme = FIXED_LEXEMES[kind];
+    if (lexeme.length() != length) {
+      return NONE;
+    }
+    for (int i = 0; i < length; i++) {
+      if (lexeme.charAt(i) != buf[start + i]) {
+        return NONE;
       }
     }
-    return false;
+    return kind;
+  }
+
+  // returns the kind code of a single character if it is a symbol, NONE if not
+  public static int symbolKind(char c) {
+    int kind = HASH_KINDS[hash(c, c, 1)];
+    return kind != NONE && FIXED_LEXEMES[kind].length() == 1 && FIXED_LEXEMES[kind].charAt(0) == c ? kind : NONE;
+  }
+
+  // set type of token depending on lexeme. Returns true if lexeme is of that type
+
+  static public boolean isKeyword(String lexeme) {
+    int kind = fixedKind(lexeme);
+    return kind != NONE && kind < KEYWORDS.length;
+  }
+
+  static public boolean isSymbol(String lexeme) {
+    return fixedKind(lexeme) >= KEYWORDS.length;
   }
 
   static public boolean isConstant(String lexeme) {
@@ -0,0 +1,136 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/* compact store of tokens as parallel arrays, holding for each token its kind code, its id in Names, the start and
+** length of its lexeme and its line and column packed into one long. Lexemes are not copied out of the source bytes of
+** the file. Only tokens read character by character have their lexeme copied, into a shared character store, and their
+** start is kept as ~start to tell the two apart. Keywords, symbols and names need neither, as their id gives their
+** lexeme
+*/
+public class TokenBuffer {
+    private ByteBuffer source = null;
+    private char[] text = new char[256];
+    private int textLength = 0;
+
+    private int[] kinds = new int[64];
+    private int[] ids = new int[64];
+    private int[] starts = new int[64];
+    private int[] lengths = new int[64];
+    private long[] positions = new long[64];
+    private int size = 0;
+
+    // characters copied out of the source bytes, reused for every lexeme
+    private char[] copied = new char[64];
+
+    // sets the bytes that the lexemes of tokens added from now on point into
+    public void setSource(ByteBuffer source) {
+        this.source = source;
+    }
+
+    // adds a token whose lexeme is found between start and start + length of the source bytes
+    public void add(int kind, int id, int start, int length, long position) {
+        append(kind, id, start, length, position);
+    }
+
+    // adds a token, copying its lexeme out of buf unless it has an id
+    public void add(int kind, int id, char[] buf, int start, int length, long position) {
+        if (id != Token.NONE) {
+            append(kind, id, 0, 0, position);
+            return;
+        }
+        if (textLength + length > text.length) {
+            char[] larger = new char[Math.max(textLength + length, text.length * 2)];
+            System.arraycopy(text, 0, larger, 0, textLength);
+            text = larger;
+        }
+        System.arraycopy(buf, start, text, textLength, length);
+        append(kind, id, ~textLength, length, position);
+        textLength += length;
+    }
+
+    private void append(int kind, int id, int start, int length, long position) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        kinds[size] = kind;
+        ids[size] = id;
+        starts[size] = start;
+        lengths[size] = length;
+        positions[size] = position;
+        size++;
+    }
+
+    // removes all tokens, keeping the arrays for reuse
+    public void clear() {
+        size = 0;
+        textLength = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // returns the kind code of token i, Token.NONE if it is not a keyword or symbol
+    public int kind(int i) {
+        return kinds[i];
+    }
+
+    // returns the packed line and column of token i
+    public long position(int i) {
+        return positions[i];
+    }
+
+    // returns the id of token i in Names, Token.NONE if it is not a keyword, symbol or name
+    public int id(int i) {
+        return ids[i];
+    }
+
+    // returns the lexeme of token i. Keywords, symbols and names return their shared string
+    public String lexeme(int i) {
+        if (kinds[i] != Token.NONE) {
+            return Token.fixed(kinds[i]).getLexeme();
+        }
+        if (ids[i] != Token.NONE) {
+            return Names.name(ids[i]);
+        }
+        int start = starts[i], length = lengths[i];
+        if (start < 0) {
+            return new String(text, ~start, length);
+        }
+        if (copied.length < length) {
+            copied = new char[Math.max(length, copied.length * 2)];
+        }
+        for (int j = 0; j < length; j++) {
+            copied[j] = (char) source.get(start + j);
+        }
+        return new String(copied, 0, length);
+    }
+
+    // returns token i, which is the shared token for keywords and symbols
+    public Token token(int i) {
+        if (kinds[i] != Token.NONE) {
+            return Token.fixed(kinds[i]);
+        }
+        return new Token(lexeme(i), ids[i]);
+    }
+
+    // packs a line and column into one long, the line in the high 32 bits, so that neither is ever cut short
+    public static long pack(int line, int column) {
+        return ((long) line << 32) | column;
+    }
+
+    // returns the line of a packed position
+    public static int line(long position) {
+        return (int) (position >>> 32);
+    }
+
+    // returns the column of a packed position
+    public static int column(long position) {
+        return (int) position;
+    }
+}
@@ -0,0 +1,130 @@
+/* a cursor over the tokens of a file. Tokens are either read from a buffer filled beforehand, or pulled from a scanner
+** as they are needed, in which case only the tokens being looked ahead at are kept
+*/
+public class TokenStream {
+    private TokenBuffer tokens;
+    // index of the next token to be consumed
+    private int position = 0;
+
+    // scanner tokens are pulled from, and a ring buffer of the tokens pulled but not yet consumed and their positions
+    private FileScanner scanner = null;
+    private Token[] window = null;
+    private long[] windowPositions = null;
+    private int head = 0, count = 0;
+
+    // packed line and column of the token last consumed
+    private long current = 0;
+    // the token last read out of the buffer and its index, so that peeking and then consuming only creates it once
+    private Token cached = null;
+    private int cachedIndex = -1;
+
+    public TokenStream(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    // creates a stream which only scans as much of the file as it needs
+    public TokenStream(FileScanner scanner) {
+        this.scanner = scanner;
+        this.window = new Token[8];
+        this.windowPositions = new long[8];
+    }
+
+    // consumes and returns the next token, or Token.EOF once all tokens have been consumed
+    public Token next() {
+        if (scanner != null) {
+            if (!fill(1)) {
+                return Token.EOF;
+            }
+            Token token = window[head];
+            current = windowPositions[head];
+            window[head] = null;
+            head = (head + 1) & (window.length - 1);
+            count--;
+            return token;
+        }
+        if (position >= tokens.size()) {
+            return Token.EOF;
+        }
+        current = tokens.position(position);
+        return tokenAt(position++);
+    }
+
+    // returns the k'th token that has not been consumed yet, starting at 1, or Token.EOF if there is none
+    public Token peek(int k) {
+        if (scanner != null) {
+            if (!fill(k)) {
+                return Token.EOF;
+            }
+            return window[(head + k - 1) & (window.length - 1)];
+        }
+        int i = position + k - 1;
+        if (i >= tokens.size()) {
+            return Token.EOF;
+        }
+        return tokenAt(i);
+    }
+
+    // returns token i of the buffer
+    private Token tokenAt(int i) {
+        if (i != cachedIndex) {
+            cached = tokens.token(i);
+            cachedIndex = i;
+        }
+        return cached;
+    }
+
+    // returns true once all tokens have been consumed
+    public boolean atEnd() {
+        if (scanner != null) {
+            return !fill(1);
+        }
+        return position >= tokens.size();
+    }
+
+    // returns the line of the token last consumed. Consuming past the end keeps the line of the last token
+    public int getLine() {
+        return TokenBuffer.line(current);
+    }
+
+    // returns the column of the token last consumed
+    public int getColumn() {
+        return TokenBuffer.column(current);
+    }
+
+    // scans until at least k tokens are waiting in the window. Returns false if the file ends first
+    private boolean fill(int k) {
+        TokenBuffer scanned = scanner.tokeniser.getTokenBuffer();
+        while (count < k) {
+            if (scanned.size() == 0) {
+                if (!scanner.scan() && scanned.size() == 0) {
+                    return false;
+                }
+                continue;
+            }
+            for (int i = 0; i < scanned.size(); i++) {
+                if (count == window.length) {
+                    grow();
+                }
+                int slot = (head + count) & (window.length - 1);
+                window[slot] = scanned.token(i);
+                windowPositions[slot] = scanned.position(i);
+                count++;
+            }
+            scanned.clear();
+        }
+        return true;
+    }
+
+    // doubles the size of the window, keeping the waiting tokens in order
+    private void grow() {
+        Token[] larger = new Token[window.length * 2];
+        long[] largerPositions = new long[window.length * 2];
+        for (int i = 0; i < count; i++) {
+            larger[i] = window[(head + i) & (window.length - 1)];
+            largerPositions[i] = windowPositions[(head + i) & (window.length - 1)];
+        }
+        window = larger;
+        windowPositions = largerPositions;
+        head = 0;
+    }
+}
@@ -1,62 +1,171 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.nio.ByteBuffer;
 
-// has a list of tokens and creates new tokens
+// creates new tokens, storing them in a token buffer
 public class Tokeniser {
 
-    private List<Token> tokens;
+    private TokenBuffer tokens;
     public Tokeniser() {
-        tokens = new ArrayList<Token>();
+        tokens = new TokenBuffer();
     }
-    private String lexeme = "";
+    // characters of the lexeme being built, reused for every lexeme
+    private char[] lexeme = new char[64];
+    private int lexemeLength = 0;
+    // characters copied out of a byte buffer, reused for every lexeme
+    private char[] copied = new char[64];
+    // number of tokens created, and number of tokens still to be dropped instead of created
+    private int count = 0, skip = 0;
+
+    /* packed line and column of the character being passed to createLexeme, of the start of the lexeme being built
+    ** and of the last '/' passed, which only becomes a token once the character after it is known
+    */
+    private long position = 0, lexemePosition = 0, slashPosition = 0;
+    // how far through the source bytes new lines have been counted, the line reached and where that line starts
+    private int countedTo = 0, line = 1, lineStart = 0;
 
     // use lexeme to make tokens
     public void createToken( String lexeme){
-        Token token = new Token(lexeme);
-        tokens.add(token);
+        int length = lexeme.length();
+        if (copied.length < length) {
+            copied = new char[Math.max(length, copied.length * 2)];
+        }
+        lexeme.getChars(0, length, copied, 0);
+        createToken(copied, 0, length, position);
+    }
+
+    // use the lexeme between start and end of buffer, found at the given position, to make a token
+    private void createToken(char[] buf, int start, int end, long position) {
+        if (skip > 0) {
+            skip--;
+            return;
+        }
+        int kind = Token.fixedKind(buf, start, end);
+        tokens.add(kind, nameId(kind, buf, start, end - start), buf, start, end - start, position);
+        count++;
+    }
+
+    // returns the id of a lexeme that is a keyword, symbol or name, Token.NONE for a constant or anything else
+    private static int nameId(int kind, char[] buf, int start, int length) {
+        if (kind != Token.NONE) {
+            return kind;
+        }
+        return Token.startsName(buf[start]) ? Names.id(buf, start, length) : Token.NONE;
+    }
+
+    // use the ascii lexeme between start and end of buffer to make a token. The lexeme is not copied
+    public void createToken(ByteBuffer buf, int start, int end) {
+        if (skip > 0) {
+            skip--;
+            return;
+        }
+        int length = end - start;
+        if (copied.length < length) {
+            copied = new char[Math.max(length, copied.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            copied[i] = (char) buf.get(start + i);
+        }
+        tokens.setSource(buf);
+        int kind = Token.fixedKind(copied, 0, length);
+        tokens.add(kind, nameId(kind, copied, 0, length), start, length, positionOf(buf, start));
+        count++;
+    }
+
+    // returns the packed line and column of an offset into the source bytes. Offsets must be asked for in order
+    private long positionOf(ByteBuffer buf, int offset) {
+        for (int i = countedTo; i < offset; i++) {
+            if (buf.get(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        countedTo = offset;
+        return TokenBuffer.pack(line, offset - lineStart + 1);
+    }
+
+    // sets the line and column of the next character passed to createLexeme
+    public void setPosition(int line, int column) {
+        position = TokenBuffer.pack(line, column);
     }
+
+    // sets the line and column of a '/' read without being passed to createLexeme
+    public void setSlashPosition(int line, int column) {
+        slashPosition = TokenBuffer.pack(line, column);
+    }
+
+    // drops the next n tokens instead of creating them
+    public void skipTokens(int n) {
+        skip += n;
+    }
+
+    // returns the buffer of tokens created so far
+    public TokenBuffer getTokenBuffer() {
+        return tokens;
+    }
+
     // return list of all tokens for the file
-    public List<Token> getTokens () { return tokens; }
+    public List<Token> getTokens () {
+        List<Token> list = new ArrayList<Token>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            list.add(tokens.token(i));
+        }
+        return list;
+    }
+
+    // returns the number of tokens created so far
+    public int getCount() {
+        return count;
+    }
 
     public String getLexeme() {
-        return lexeme;
+        return new String(lexeme, 0, lexemeLength);
     }
 
     // creates lexeme for a token
     public void createLexeme(char c, char cPrev, boolean isString) {
-        String s = "";
         // add / to lexeme if it wasn't part of a comment and proceed below
         if (cPrev == '/' && c != '*' && !isString) {
-            s += cPrev; // store the '/'
-            if (!lexeme.isEmpty()) {
-                createToken(lexeme); // create the preceding lexeme before creating a lexeme for '/'
-            }
-            lexeme = "";
-            createToken(s);
-            s = "";
+            flushLexeme(); // create the preceding lexeme before creating a lexeme for '/'
+            copied[0] = '/';
+            createToken(copied, 0, 1, slashPosition);
         }
 
         if (isString) { // build string lexeme
-            lexeme += c;
-        } else if (c != '/') {
-            s += c;
-            if (Token.isSymbol(s)) { // make special symbols into their own token
-                if (!lexeme.isEmpty()) {
-                    createToken(lexeme);
-                }
-                lexeme = "";
-                createToken(s);
+            appendToLexeme(c);
+        } else if (c == '/') {
+            slashPosition = position;
+        } else {
+            if (Token.symbolKind(c) != Token.NONE) { // make special symbols into their own token
+                flushLexeme();
+                copied[0] = c;
+                createToken(copied, 0, 1, position);
             } else if (Character.isWhitespace(c)) { // make new token if white space encountered
-                if (!lexeme.isEmpty()) {
-                    createToken(lexeme);
-                }
-                lexeme = "";
-            } else if (cPrev == '/') { // otherwise just add the character to the lexeme
-                lexeme += c;
+                flushLexeme();
             } else { // otherwise just add the character to the lexeme
-                lexeme += c;
+                appendToLexeme(c);
             }
+        }
+    }
+
+    // adds a character to the end of the lexeme being built
+    private void appendToLexeme(char c) {
+        if (lexemeLength == 0) {
+            lexemePosition = position;
+        }
+        if (lexemeLength == lexeme.length) {
+            char[] larger = new char[lexeme.length * 2];
+            System.arraycopy(lexeme, 0, larger, 0, lexemeLength);
+            lexeme = larger;
+        }
+        lexeme[lexemeLength++] = c;
+    }
 
+    // creates a token from the lexeme being built, if there is one, and starts a new lexeme
+    private void flushLexeme() {
+        if (lexemeLength > 0) {
+            createToken(lexeme, 0, lexemeLength, lexemePosition);
         }
+        lexemeLength = 0;
     }
-}
\ No newline at end of file
+}
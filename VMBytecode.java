@@ -0,0 +1,202 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/* the binary form of a class's vm code, written instead of the text when the compiler is given --format binary. It
+** holds the same instructions as the .vm file, so it can be turned back into exactly the text the compiler would
+** have written. Numbers are written as varints, 7 bits to a byte with the high bit set on every byte but the last
+**
+** "JVMB" <version byte>
+** <number of names> then for each: <length in bytes> <UTF-8 bytes>
+** <number of functions> then for each: <name index + 1, 0 if undeclared> <locals> <number of instructions>
+**     then for each instruction: <opcode << 4 | segment or label kind> followed by
+**     push, pop:              <index>
+**     label, goto, if-goto:   <label number>
+**     call:                   <name index> <number of arguments>
+**
+** Usage: VMBytecode <file.vmb>...   writes the files as text
+*/
+public class VMBytecode {
+    public static final String EXTENSION = ".vmb";
+    private static final byte[] MAGIC = {'J', 'V', 'M', 'B'};
+    private static final int VERSION = 1;
+    private static final VMCode.Opcode[] OPCODES = VMCode.Opcode.values();
+    private static final int SEGMENT_COUNT = VMCode.Segment.values().length;
+    private static final int LABEL_COUNT = VMCode.Label.values().length;
+
+    // writes the code of a class to a stream
+    public static void write(VMFile vmFile, OutputStream os) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(MAGIC);
+        bytes.write(VERSION);
+        List<String> names = vmFile.getNames();
+        writeVarint(bytes, names.size());
+        for (String name : names) {
+            byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes, utf8.length);
+            bytes.write(utf8);
+        }
+        writeVarint(bytes, vmFile.getFunctions().size());
+        for (VMCode code : vmFile.getFunctions()) {
+            writeVarint(bytes, code.getName() + 1);
+            writeVarint(bytes, code.getLocals());
+            writeVarint(bytes, code.size());
+            for (int i = 0; i < code.size(); i++) {
+                VMCode.Opcode op = code.op(i);
+                switch (op) {
+                    case PUSH:
+                    case POP:
+                    case LABEL:
+                    case GOTO:
+                    case IF_GOTO:
+                        bytes.write(op.ordinal() << 4 | code.arg(i));
+                        writeVarint(bytes, code.value(i));
+                        break;
+                    case CALL:
+                        bytes.write(op.ordinal() << 4);
+                        writeVarint(bytes, code.arg(i));
+                        writeVarint(bytes, code.value(i));
+                        break;
+                    default:
+                        bytes.write(op.ordinal() << 4);
+                }
+            }
+        }
+        bytes.writeTo(os);
+    }
+
+    // loads the code of a class from a binary file, throwing IOException if the file isn't one
+    public static VMFile read(File file) throws IOException {
+        Reader reader = new Reader(Files.readAllBytes(file.toPath()));
+        for (byte b : MAGIC) {
+            if (reader.readByte() != b) {
+                throw new IOException(file.getName() + " is not a vm bytecode file");
+            }
+        }
+        if (reader.readByte() != VERSION) {
+            throw new IOException(file.getName() + " was written by another version of the compiler");
+        }
+
+        VMFile vmFile = new VMFile(file);
+        int nameCount = reader.readVarint();
+        for (int i = 0; i < nameCount; i++) {
+            vmFile.nameIndex(reader.readString());
+        }
+        int functionCount = reader.readVarint();
+        for (int f = 0; f < functionCount; f++) {
+            VMCode code = new VMCode();
+            int name = reader.readVarint() - 1;
+            check(name < nameCount, file, "a function with no name");
+            code.declare(name, reader.readVarint());
+            int size = reader.readVarint();
+            for (int i = 0; i < size; i++) {
+                int b = reader.readByte() & 0xff;
+                check(b >> 4 < OPCODES.length, file, "an unknown opcode");
+                VMCode.Opcode op = OPCODES[b >> 4];
+                switch (op) {
+                    case PUSH:
+                    case POP:
+                        check((b & 0xf) < SEGMENT_COUNT, file, "an unknown segment");
+                        code.add(op, b & 0xf, reader.readVarint());
+                        break;
+                    case LABEL:
+                    case GOTO:
+                    case IF_GOTO:
+                        check((b & 0xf) < LABEL_COUNT, file, "an unknown label");
+                        code.add(op, b & 0xf, reader.readVarint());
+                        break;
+                    case CALL:
+                        int target = reader.readVarint();
+                        check(target >= 0 && target < nameCount, file, "a call with no name");
+                        code.add(op, target, reader.readVarint());
+                        break;
+                    default:
+                        code.add(op, 0, 0);
+                }
+            }
+            vmFile.add(code);
+        }
+        return vmFile;
+    }
+
+    private static void check(boolean valid, File file, String problem) throws IOException {
+        if (!valid) {
+            throw new IOException(file.getName() + " has " + problem);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream bytes, int value) {
+        while ((value & ~0x7f) != 0) {
+            bytes.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        bytes.write(value);
+    }
+
+    // reads the bytes of a file in order
+    private static class Reader {
+        private byte[] bytes;
+        private int position = 0;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        byte readByte() throws IOException {
+            if (position == bytes.length) {
+                throw new IOException("vm bytecode file ends too soon");
+            }
+            return bytes[position++];
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("vm bytecode file has a number that is too long");
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            if (length < 0 || length > bytes.length - position) {
+                throw new IOException("vm bytecode file ends too soon");
+            }
+            String s = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+    }
+
+    public static void main(String[] args) {
+        PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        for (String arg : args) {
+            if (!new File(arg).isFile()) {
+                pw.flush();
+                System.err.println("error: " + arg + " does not exist");
+                continue;
+            }
+            try {
+                VMFile vmFile = read(new File(arg));
+                for (VMCode code : vmFile.getFunctions()) {
+                    code.write(pw, vmFile.getNames());
+                }
+            } catch (IOException e) {
+                pw.flush();
+                System.err.println("error: " + e.getMessage());
+            }
+        }
+        pw.flush();
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+/* the vm code of a single function, held as parallel arrays of opcodes and operands rather than lines of text. The
+** first operand of an instruction is a segment, a label or the name of the function called, and the second is an
+** index, a label number or a number of arguments. Text is only made when the code is written out
+*/
+public class VMCode {
+
+    public enum Opcode {PUSH, POP, ADD, SUB, NEG, EQ, GT, LT, AND, OR, NOT, LABEL, GOTO, IF_GOTO, CALL, RETURN}
+    // FIELD is only used for variables of other classes, which are pushed by the kind of their symbol
+    public enum Segment {CONSTANT, ARGUMENT, LOCAL, STATIC, THIS, THAT, POINTER, TEMP, FIELD}
+    public enum Label {IF_TRUE, IF_FALSE, IF_END, WHILE_EXP, WHILE_END}
+
+    private static final Opcode[] OPCODES = Opcode.values();
+    private static final String[] OPCODE_TEXT = new String[OPCODES.length];
+    private static final String[] SEGMENT_TEXT = new String[Segment.values().length];
+    private static final Label[] LABELS = Label.values();
+    static {
+        for (Opcode op : OPCODES) {
+            OPCODE_TEXT[op.ordinal()] = op.name().toLowerCase().replace('_', '-');
+        }
+        for (Segment seg : Segment.values()) {
+            SEGMENT_TEXT[seg.ordinal()] = seg.name().toLowerCase();
+        }
+    }
+
+    private byte[] ops = new byte[16];
+    private int[] args = new int[16];
+    private int[] values = new int[16];
+    private int size = 0;
+    // index of the function's name in the names of its file and its number of locals, once it has been declared
+    private int name = -1, locals = 0;
+
+    // adds an instruction and returns its index
+    public int add(Opcode op, int arg, int value) {
+        if (size == ops.length) {
+            ops = Arrays.copyOf(ops, size * 2);
+            args = Arrays.copyOf(args, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        ops[size] = (byte) op.ordinal();
+        args[size] = arg;
+        values[size] = value;
+        return size++;
+    }
+
+    // replaces the operands of instruction i
+    public void set(int i, int arg, int value) {
+        args[i] = arg;
+        values[i] = value;
+    }
+
+    // sets the name and number of locals of the function, which are written before its code
+    public void declare(int name, int locals) {
+        this.name = name;
+        this.locals = locals;
+    }
+
+    // removes the instructions from index from up to index to, moving the instructions after them down
+    public void remove(int from, int to) {
+        System.arraycopy(ops, to, ops, from, size - to);
+        System.arraycopy(args, to, args, from, size - to);
+        System.arraycopy(values, to, values, from, size - to);
+        size -= to - from;
+    }
+
+    // removes the instructions from index size onwards
+    public void truncate(int size) {
+        this.size = size;
+    }
+
+    // replaces the instructions of the function with those of another
+    public void replaceCode(VMCode code) {
+        ops = code.ops;
+        args = code.args;
+        values = code.values;
+        size = code.size;
+    }
+
+    // index of the function's name in the names of its file, or -1 if it has not been declared
+    public int getName() {
+        return name;
+    }
+
+    public int getLocals() {
+        return locals;
+    }
+
+    public boolean isEmpty() {
+        return size == 0 && name < 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Opcode op(int i) {
+        return OPCODES[ops[i]];
+    }
+
+    public int arg(int i) {
+        return args[i];
+    }
+
+    public int value(int i) {
+        return values[i];
+    }
+
+    // writes the function as text, one instruction per line. names are the names of functions in its file
+    public void write(PrintWriter pw, List<String> names) {
+        if (name >= 0) {
+            pw.print("function ");
+            pw.print(names.get(name));
+            pw.print(' ');
+            pw.println(locals);
+        }
+        for (int i = 0; i < size; i++) {
+            Opcode op = OPCODES[ops[i]];
+            pw.print(OPCODE_TEXT[ops[i]]);
+            switch (op) {
+                case PUSH:
+                case POP:
+                    pw.print(' ');
+                    pw.print(SEGMENT_TEXT[args[i]]);
+                    pw.print(' ');
+                    pw.print(values[i]);
+                    break;
+                case LABEL:
+                case GOTO:
+                case IF_GOTO:
+                    pw.print(' ');
+                    pw.print(LABELS[args[i]].name());
+                    pw.print(values[i]);
+                    break;
+                case CALL:
+                    pw.print(' ');
+                    pw.print(names.get(args[i]));
+                    pw.print(' ');
+                    pw.print(values[i]);
+                    break;
+                default:
+            }
+            pw.println();
+        }
+    }
+}
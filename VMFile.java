@@ -0,0 +1,160 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* the vm code of a class, kept in memory so that its .vm file is written in one go. Pushes of variables of other
+** classes are left unresolved until all classes have been parsed
+*/
+public class VMFile {
+    private File file;
+    private List<VMCode> functions = new ArrayList<VMCode>();
+    // names of the functions declared and called in the file, and their indices
+    private List<String> names = new ArrayList<String>();
+    private Map<String, Integer> nameIndices = new HashMap<String, Integer>();
+    // number of pushes still to be resolved
+    private int unresolved = 0;
+    // optimiser run on each function before the file is written, or null if the code is written as it is
+    private Peephole peephole = null;
+    // program the code is added to instead of being written to the .vm file, or null if it is written to the file
+    private AsmWriter asmWriter = null;
+    // true if the file is written as bytecode rather than text
+    private boolean binary = false;
+    // program the code is added to until every class has been compiled and it can be linked, or null if it isn't linked
+    private Linker linker = null;
+
+    public VMFile(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setPeephole(Peephole peephole) {
+        this.peephole = peephole;
+    }
+
+    public void setAsmWriter(AsmWriter asmWriter) {
+        this.asmWriter = asmWriter;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public void setLinker(Linker linker) {
+        this.linker = linker;
+    }
+
+    // adds the code of a function to the end of the file
+    public void add(VMCode code) {
+        functions.add(code);
+    }
+
+    public List<VMCode> getFunctions() {
+        return functions;
+    }
+
+    // returns the index of a function name, adding it to the names of the file if needed
+    public int nameIndex(String name) {
+        Integer index = nameIndices.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            nameIndices.put(name, index);
+        }
+        return index;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public String name(int index) {
+        return names.get(index);
+    }
+
+    // adds an unresolved push to a function and returns its index
+    public int addUnresolved(VMCode code) {
+        unresolved++;
+        return code.add(VMCode.Opcode.PUSH, -1, 0);
+    }
+
+    // resolves push i of a function. Returns true once every push has been resolved
+    public boolean resolve(VMCode code, int i, VMCode.Segment segment, int index) {
+        code.set(i, segment.ordinal(), index);
+        unresolved--;
+        return isResolved();
+    }
+
+    public boolean isResolved() {
+        return unresolved == 0;
+    }
+
+    // optimises the code if an optimiser has been set, reporting what was removed from each function
+    public void optimise(PrintStream out) {
+        if (peephole == null) {
+            return;
+        }
+        for (VMCode code : functions) {
+            int size = code.size();
+            int removed = peephole.optimise(code);
+            if (removed > 0) {
+                out.println("peephole: removed " + removed + " of " + size + " instructions from "
+                        + names.get(code.getName()));
+            }
+        }
+    }
+
+    /* optimises the code and writes it to its file, or adds it to the program being linked or to the assembly program
+    ** if there is one
+    */
+    public void write(PrintStream out) {
+        optimise(out);
+        if (linker != null) {
+            linker.add(this);
+        } else if (asmWriter != null) {
+            asmWriter.add(this);
+        } else {
+            writeFile(out);
+        }
+    }
+
+    // writes the code to its file as text or bytecode
+    public void writeFile(PrintStream out) {
+        try {
+            if (binary) {
+                try (OutputStream os = new FileOutputStream(file)) {
+                    VMBytecode.write(this, os);
+                }
+                return;
+            }
+            write(new FileWriter(file));
+        } catch (IOException e) {
+            out.println("error: error writing to file");
+        }
+    }
+
+    // writes the code to the given writer and closes it
+    public void write(Writer writer) {
+        PrintWriter pw = new PrintWriter(new BufferedWriter(writer));
+        for (VMCode code : functions) {
+            code.write(pw, names);
+        }
+        pw.close();
+    }
+}